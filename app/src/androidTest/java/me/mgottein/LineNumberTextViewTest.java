@@ -0,0 +1,84 @@
+package me.mgottein;
+
+import android.content.Context;
+import android.test.AndroidTestCase;
+import android.view.View;
+import android.view.ViewGroup;
+
+public class LineNumberTextViewTest extends AndroidTestCase {
+
+    private static class LayoutCountingEditText extends LineNumberEditText {
+        int layoutRequests;
+
+        LayoutCountingEditText(Context context) {
+            super(context);
+        }
+
+        @Override
+        public void requestLayout() {
+            layoutRequests++;
+            super.requestLayout();
+        }
+    }
+
+    private LayoutCountingEditText mEditText;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mEditText = new LayoutCountingEditText(getContext());
+        //fixed size so TextView itself never needs to resize while typing
+        mEditText.setLayoutParams(new ViewGroup.LayoutParams(1000, 1000));
+        //gutter updates outside a batch wait for the next frame, batches apply them right away
+        mEditText.beginGutterBatch();
+        mEditText.setText("1\n2\n3\n4\n5\n6\n7\n8");
+        mEditText.endGutterBatch();
+        layout();
+    }
+
+    private void layout() {
+        mEditText.measure(View.MeasureSpec.makeMeasureSpec(1000, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(1000, View.MeasureSpec.EXACTLY));
+        mEditText.layout(0, 0, 1000, 1000);
+        mEditText.layoutRequests = 0;
+    }
+
+    public void testTypingDoesNotRequestLayout() {
+        int paddingLeft = mEditText.getPaddingLeft();
+        for(char c = 'a'; c <= 'z'; c++) {
+            mEditText.beginGutterBatch();
+            mEditText.getText().append(c);
+            mEditText.endGutterBatch();
+        }
+        assertEquals(0, mEditText.layoutRequests);
+        assertEquals(paddingLeft, mEditText.getPaddingLeft());
+    }
+
+    public void testNewLineWithSameDigitsDoesNotRequestLayout() {
+        mEditText.beginGutterBatch();
+        mEditText.getText().append("\n9");
+        mEditText.endGutterBatch();
+        assertEquals(0, mEditText.layoutRequests);
+    }
+
+    public void testNewDigitRequestsLayout() {
+        int paddingLeft = mEditText.getPaddingLeft();
+        mEditText.beginGutterBatch();
+        mEditText.getText().append("\n9\n10");
+        mEditText.endGutterBatch();
+        assertTrue(mEditText.layoutRequests > 0);
+        assertTrue(mEditText.getPaddingLeft() > paddingLeft);
+    }
+
+    public void testBatchDefersPaddingUntilEnd() {
+        int paddingLeft = mEditText.getPaddingLeft();
+        mEditText.beginGutterBatch();
+        for(int i = 9; i <= 120; i++) {
+            mEditText.getText().append("\n" + i);
+        }
+        assertEquals(0, mEditText.layoutRequests);
+        assertEquals(paddingLeft, mEditText.getPaddingLeft());
+        mEditText.endGutterBatch();
+        assertTrue(mEditText.getPaddingLeft() > paddingLeft);
+    }
+}
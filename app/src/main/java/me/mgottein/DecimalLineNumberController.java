@@ -0,0 +1,36 @@
+package me.mgottein;
+
+/**
+ * Displays every line number in decimal. Subclasses that change the text should change the template to match.
+ */
+public class DecimalLineNumberController implements LineNumberBufferController, LineNumberTemplateController {
+    @Override
+    public String getLineNumberText(boolean layoutOnLeft, int line) {
+        return Integer.toString(line);
+    }
+
+    @Override
+    public int getLineNumberText(boolean layoutOnLeft, int line, char[] buffer) {
+        return LineNumberFormat.formatDecimal(line, buffer, 0);
+    }
+
+    @Override
+    public CharSequence getLineNumberTemplate(boolean layoutOnLeft, int maxLineNumber) {
+        int digits = LineNumberFormat.digitCount(maxLineNumber);
+        //room for the sign
+        return LineNumberFormat.getDigitTemplate(maxLineNumber < 0 ? digits + 1 : digits);
+    }
+
+    @Override
+    public boolean showLineNumber(int line) {
+        return true;
+    }
+
+    /**
+     * @return if line numbers are plain decimal numbers, so the gutter width only changes with the number of digits.
+     * Subclasses that change the text or template should return false.
+     */
+    public boolean isDecimal() {
+        return true;
+    }
+}
@@ -0,0 +1,58 @@
+package me.mgottein;
+
+/**
+ * Several text changes merged into one, so the line index is updated once for a batch of edits. The range covers
+ * every changed char in the current text, everything outside of it is unchanged.
+ */
+class EditRange {
+    private boolean mEmpty = true;
+    //changed range in the current text
+    private int mStart;
+    private int mEnd;
+    //how much longer the range got
+    private int mDelta;
+
+    boolean isEmpty() {
+        return mEmpty;
+    }
+
+    /**
+     * Merge a change where lengthBefore chars starting at start were replaced by lengthAfter chars
+     */
+    void add(int start, int lengthBefore, int lengthAfter) {
+        if(mEmpty) {
+            mEmpty = false;
+            mStart = start;
+            mEnd = start + lengthAfter;
+            mDelta = lengthAfter - lengthBefore;
+            return;
+        }
+        //cover both ranges before the change, then move the end by the change
+        int end = Math.max(mEnd, start + lengthBefore);
+        mStart = Math.min(mStart, start);
+        mEnd = end + lengthAfter - lengthBefore;
+        mDelta += lengthAfter - lengthBefore;
+    }
+
+    int getStart() {
+        return mStart;
+    }
+
+    /**
+     * @return length of the range before any of the changes
+     */
+    int getLengthBefore() {
+        return mEnd - mStart - mDelta;
+    }
+
+    /**
+     * @return length of the range now
+     */
+    int getLengthAfter() {
+        return mEnd - mStart;
+    }
+
+    void clear() {
+        mEmpty = true;
+    }
+}
@@ -0,0 +1,87 @@
+package me.mgottein;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+
+/**
+ * Thumb on the right edge of the view that scrolls the whole text when dragged. While dragging, a label next to it
+ * shows the line number it scrolled to, which only needs a line lookup in the current layout.
+ */
+class FastScroller {
+    private static final int THUMB_COLOR = 0x80808080;
+
+    private final float mThumbWidth;
+    private final float mThumbHeight;
+    //touches this far from the right edge can grab the thumb
+    private final float mTouchWidth;
+    private final float mLabelPadding;
+    private final Paint mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final RectF mRect = new RectF();
+    private boolean mDragging;
+    //where on the thumb it was grabbed
+    private float mGrabOffset;
+
+    FastScroller(float density) {
+        mThumbWidth = 8 * density;
+        mThumbHeight = 48 * density;
+        mTouchWidth = 32 * density;
+        mLabelPadding = 8 * density;
+        mPaint.setColor(THUMB_COLOR);
+    }
+
+    boolean isDragging() {
+        return mDragging;
+    }
+
+    private float getThumbTop(int height, float fraction) {
+        return fraction * (height - mThumbHeight);
+    }
+
+    /**
+     * @param fraction how far the view is scrolled, from 0 to 1
+     * @param label shown next to the thumb, null to show none
+     * @param textPaint paint of the label
+     */
+    void draw(Canvas canvas, int scrollX, int scrollY, int width, int height, float fraction, String label,
+              Paint textPaint) {
+        float top = scrollY + getThumbTop(height, fraction);
+        float right = scrollX + width;
+        mRect.set(right - mThumbWidth, top, right, top + mThumbHeight);
+        canvas.drawRoundRect(mRect, mThumbWidth / 2, mThumbWidth / 2, mPaint);
+        if(label == null) {
+            return;
+        }
+        float labelWidth = textPaint.measureText(label) + 2 * mLabelPadding;
+        float labelRight = right - mTouchWidth;
+        mRect.set(labelRight - labelWidth, top, labelRight, top + mThumbHeight);
+        canvas.drawRoundRect(mRect, mLabelPadding, mLabelPadding, mPaint);
+        float baseline = top + (mThumbHeight - textPaint.ascent() - textPaint.descent()) / 2;
+        canvas.drawText(label, mRect.left + mLabelPadding, baseline, textPaint);
+    }
+
+    /**
+     * @return if the touch grabbed the thumb
+     */
+    boolean onDown(float x, float y, int width, int height, float fraction) {
+        float top = getThumbTop(height, fraction);
+        if(x < width - mTouchWidth || y < top || y > top + mThumbHeight) {
+            return false;
+        }
+        mDragging = true;
+        mGrabOffset = y - top;
+        return true;
+    }
+
+    /**
+     * @return the fraction of the text the thumb was dragged to
+     */
+    float onMove(float y, int height) {
+        float fraction = (y - mGrabOffset) / (height - mThumbHeight);
+        return Math.max(0, Math.min(1, fraction));
+    }
+
+    void onUp() {
+        mDragging = false;
+    }
+}
@@ -0,0 +1,234 @@
+package me.mgottein;
+
+/**
+ * A document with folded line ranges. The view only holds the projection, the document without the folded lines, so
+ * folded lines cost nothing to lay out. A fold keeps its first line visible and hides the lines after it. The hidden
+ * text starts at the newline that ends the first line, so typing at the end of that line stays in front of it.
+ */
+class FoldedDocument {
+    private final GapText mText;
+    private final LineIndex mLines = new LineIndex();
+    //first line of every fold in the document, the payload is the number of lines it hides
+    private final OffsetVector mFolds = new OffsetVector(8, true);
+    //first line of every fold in the projection and the lines hidden up to and including it, rebuilt after changes
+    private boolean mProjectionValid;
+    private int[] mProjectionLines = new int[8];
+    private int[] mHiddenLines = new int[8];
+
+    FoldedDocument(CharSequence text) {
+        mText = new GapText(text);
+        mLines.reset(mText);
+    }
+
+    /**
+     * @return the whole document, including folded lines
+     */
+    CharSequence getText() {
+        return mText;
+    }
+
+    int getLineCount() {
+        return mLines.getLineCount();
+    }
+
+    /**
+     * @return index of the whole document, its last change is the last edit in document lines
+     */
+    LineIndex getLineIndex() {
+        return mLines;
+    }
+
+    int getFoldCount() {
+        return mFolds.size();
+    }
+
+    /**
+     * @return index of the fold starting at line, or -1
+     */
+    int getFold(int line) {
+        int index = mFolds.lowerBound(line);
+        return index < mFolds.size() && mFolds.get(index) == line ? index : -1;
+    }
+
+    int getFoldLine(int index) {
+        return mFolds.get(index);
+    }
+
+    //the newline ending line, or the end of the text for the last line
+    private int getLineEnd(int line) {
+        return line + 1 < mLines.getLineCount() ? mLines.getLineStart(line + 1) - 1 : mText.length();
+    }
+
+    private int getHiddenStart(int index) {
+        return getLineEnd(mFolds.get(index));
+    }
+
+    private int getHiddenEnd(int index) {
+        return getLineEnd(mFolds.get(index) + mFolds.getPayload(index));
+    }
+
+    /**
+     * @param offset offset in the projection
+     * @return offset in the document, an offset at the start of hidden text maps to before it
+     */
+    int toDocumentOffset(int offset) {
+        int hidden = 0;
+        for(int i = 0, size = mFolds.size(); i < size; i++) {
+            int hiddenStart = getHiddenStart(i);
+            if(hiddenStart - hidden >= offset) {
+                break;
+            }
+            hidden += getHiddenEnd(i) - hiddenStart;
+        }
+        return offset + hidden;
+    }
+
+    /**
+     * @param offset offset in the document, not inside hidden text
+     * @return offset in the projection
+     */
+    int toProjectionOffset(int offset) {
+        int hidden = 0;
+        for(int i = 0, size = mFolds.size(); i < size; i++) {
+            int hiddenEnd = getHiddenEnd(i);
+            if(hiddenEnd > offset) {
+                break;
+            }
+            hidden += hiddenEnd - getHiddenStart(i);
+        }
+        return offset - hidden;
+    }
+
+    /**
+     * @param line line in the projection
+     * @return line in the document
+     */
+    int toDocumentLine(int line) {
+        int size = mFolds.size();
+        if(size == 0) {
+            return line;
+        }
+        if(!mProjectionValid) {
+            updateProjectionLines();
+        }
+        //last fold starting before line
+        int low = 0, high = size;
+        while(low < high) {
+            int mid = (low + high) >>> 1;
+            if(mProjectionLines[mid] < line) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low == 0 ? line : line + mHiddenLines[low - 1];
+    }
+
+    /**
+     * @param line line in the document
+     * @return line in the projection, a folded line maps to the first line of its fold
+     */
+    int toProjectionLine(int line) {
+        int hidden = 0;
+        for(int i = 0, size = mFolds.size(); i < size; i++) {
+            int foldLine = mFolds.get(i);
+            if(foldLine >= line) {
+                break;
+            }
+            if(line <= foldLine + mFolds.getPayload(i)) {
+                return foldLine - hidden;
+            }
+            hidden += mFolds.getPayload(i);
+        }
+        return line - hidden;
+    }
+
+    private void updateProjectionLines() {
+        int size = mFolds.size();
+        if(mProjectionLines.length < size) {
+            mProjectionLines = new int[size * 2];
+            mHiddenLines = new int[size * 2];
+        }
+        int hidden = 0;
+        for(int i = 0; i < size; i++) {
+            mProjectionLines[i] = mFolds.get(i) - hidden;
+            hidden += mFolds.getPayload(i);
+            mHiddenLines[i] = hidden;
+        }
+        mProjectionValid = true;
+    }
+
+    /**
+     * Fold the lines after firstLine up to lastLine, folds inside the range are merged into it
+     * @return the range [start, end) of the projection to remove, or null if nothing can be folded
+     */
+    int[] fold(int firstLine, int lastLine) {
+        lastLine = Math.min(lastLine, mLines.getLineCount() - 1);
+        if(firstLine < 0 || lastLine <= firstLine) {
+            return null;
+        }
+        int first = mFolds.lowerBound(firstLine);
+        if(first > 0 && mFolds.get(first - 1) + mFolds.getPayload(first - 1) >= firstLine) {
+            //firstLine is hidden itself
+            return null;
+        }
+        int last = first;
+        for(int size = mFolds.size(); last < size && mFolds.get(last) <= lastLine; last++) {
+            lastLine = Math.max(lastLine, mFolds.get(last) + mFolds.getPayload(last));
+        }
+        int[] range = new int[] {
+                toProjectionOffset(getLineEnd(firstLine)),
+                toProjectionOffset(getLineEnd(lastLine))
+        };
+        mFolds.delete(first, last);
+        mFolds.insert(first, firstLine, lastLine - firstLine);
+        mProjectionValid = false;
+        return range;
+    }
+
+    /**
+     * @return where the text of a fold goes back into the projection
+     */
+    int getFoldOffset(int index) {
+        return toProjectionOffset(getHiddenStart(index));
+    }
+
+    /**
+     * @return the text a fold hides
+     */
+    CharSequence getFoldText(int index) {
+        return mText.subSequence(getHiddenStart(index), getHiddenEnd(index));
+    }
+
+    void removeFold(int index) {
+        mFolds.delete(index, index + 1);
+        mProjectionValid = false;
+    }
+
+    /**
+     * Write an edit made to the projection back to the document. Folds whose hidden text the edit removed are removed
+     * with it.
+     * @param text the projection after the change
+     * @param start start of the change in the projection
+     * @param lengthBefore number of chars that were replaced
+     * @param lengthAfter number of chars that replaced them
+     */
+    void onProjectionChanged(CharSequence text, int start, int lengthBefore, int lengthAfter) {
+        int documentStart = toDocumentOffset(start);
+        int documentEnd = toDocumentOffset(start + lengthBefore);
+        int line = mLines.getLineForOffset(documentStart);
+        int removedLines = mLines.getLineForOffset(documentEnd) - line;
+        //folds from line on whose hidden text starts inside the change
+        int first = mFolds.lowerBound(line), last = first;
+        for(int size = mFolds.size(); last < size && getHiddenStart(last) < documentEnd; last++) {
+        }
+        mText.replace(documentStart, documentEnd, text, start, start + lengthAfter);
+        mLines.onTextChanged(mText, documentStart, documentEnd - documentStart, lengthAfter);
+        int insertedLines = mLines.getLineForOffset(documentStart + lengthAfter) - line;
+        mFolds.delete(first, last);
+        if(insertedLines != removedLines && first < mFolds.size()) {
+            mFolds.shift(first, insertedLines - removedLines);
+        }
+        mProjectionValid = false;
+    }
+}
@@ -0,0 +1,101 @@
+package me.mgottein;
+
+/**
+ * Editable text stored in a gap buffer, edits close to each other only move the chars between them
+ */
+class GapText implements CharSequence {
+    private char[] mChars;
+    private int mGapStart;
+    private int mGapEnd;
+
+    GapText(CharSequence text) {
+        int length = text.length();
+        mChars = new char[length + Math.max(16, length >> 4)];
+        if(text instanceof MappedText) {
+            ((MappedText) text).getChars(0, length, mChars, 0);
+        } else {
+            for(int i = 0; i < length; i++) {
+                mChars[i] = text.charAt(i);
+            }
+        }
+        mGapStart = length;
+        mGapEnd = mChars.length;
+    }
+
+    @Override
+    public int length() {
+        return mChars.length - (mGapEnd - mGapStart);
+    }
+
+    @Override
+    public char charAt(int index) {
+        return index < mGapStart ? mChars[index] : mChars[index + mGapEnd - mGapStart];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        char[] chars = new char[end - start];
+        getChars(start, end, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * Copy [start, end) into dest at destStart
+     */
+    void getChars(int start, int end, char[] dest, int destStart) {
+        if(start < mGapStart) {
+            int before = Math.min(end, mGapStart) - start;
+            System.arraycopy(mChars, start, dest, destStart, before);
+            destStart += before;
+            start += before;
+        }
+        if(start < end) {
+            System.arraycopy(mChars, start + mGapEnd - mGapStart, dest, destStart, end - start);
+        }
+    }
+
+    /**
+     * Replace [start, end) with text[textStart, textEnd)
+     */
+    void replace(int start, int end, CharSequence text, int textStart, int textEnd) {
+        moveGap(end);
+        //the replaced chars are right before the gap, fold them into it
+        mGapStart = start;
+        int count = textEnd - textStart;
+        if(mGapEnd - mGapStart < count) {
+            grow(count);
+        }
+        for(int i = textStart; i < textEnd; i++) {
+            mChars[mGapStart++] = text.charAt(i);
+        }
+    }
+
+    private void moveGap(int index) {
+        if(index < mGapStart) {
+            int count = mGapStart - index;
+            System.arraycopy(mChars, index, mChars, mGapEnd - count, count);
+            mGapStart -= count;
+            mGapEnd -= count;
+        } else if(index > mGapStart) {
+            int count = index - mGapStart;
+            System.arraycopy(mChars, mGapEnd, mChars, mGapStart, count);
+            mGapStart += count;
+            mGapEnd += count;
+        }
+    }
+
+    private void grow(int count) {
+        int length = length();
+        char[] chars = new char[Math.max(mChars.length * 2, length + count + 16)];
+        int after = mChars.length - mGapEnd;
+        System.arraycopy(mChars, 0, chars, 0, mGapStart);
+        System.arraycopy(mChars, mGapEnd, chars, chars.length - after, after);
+        mGapEnd = chars.length - after;
+        mChars = chars;
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length()).toString();
+    }
+}
@@ -0,0 +1,118 @@
+package me.mgottein;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+/**
+ * Bitmap of pre-rendered line number glyphs (0-9 plus any extra characters) for a single paint configuration.
+ * Drawing a line number copies cells out of the bitmap instead of shaping text every frame.
+ */
+class GlyphAtlas {
+    //room around each glyph for anti-aliasing and glyphs that draw outside their advance
+    private static final int CELL_PADDING = 2;
+    private static final String DIGITS = "0123456789";
+
+    private Bitmap mBitmap;
+    //extra glyphs after the digits
+    private char[] mExtraGlyphs;
+    private float[] mAdvances;
+    private int[] mCellLeft;
+    private int[] mCellWidth;
+    //offset from the baseline to the top of a cell (negative)
+    private int mCellTop;
+    private int mCellHeight;
+    private final Paint.FontMetricsInt mFontMetrics = new Paint.FontMetricsInt();
+    private final Rect mSrc = new Rect();
+    private final Rect mDst = new Rect();
+
+    /**
+     * @return if the atlas has been built since it was last invalidated
+     */
+    boolean isBuilt() {
+        return mBitmap != null;
+    }
+
+    /**
+     * Render every glyph with paint
+     * @param paint paint line numbers are drawn with
+     * @param extraGlyphs characters besides 0-9 to include, may be null
+     */
+    void build(Paint paint, String extraGlyphs) {
+        release();
+        String glyphs = extraGlyphs == null ? DIGITS : DIGITS + extraGlyphs;
+        int count = glyphs.length();
+        char[] chars = glyphs.toCharArray();
+        mExtraGlyphs = new char[count - DIGITS.length()];
+        System.arraycopy(chars, DIGITS.length(), mExtraGlyphs, 0, mExtraGlyphs.length);
+        mAdvances = new float[count];
+        mCellLeft = new int[count];
+        mCellWidth = new int[count];
+        int width = 0;
+        for(int i = 0; i < count; i++) {
+            mAdvances[i] = paint.measureText(chars, i, 1);
+            mCellLeft[i] = width;
+            mCellWidth[i] = (int) Math.ceil(mAdvances[i]) + CELL_PADDING * 2;
+            width += mCellWidth[i];
+        }
+        paint.getFontMetricsInt(mFontMetrics);
+        mCellTop = mFontMetrics.top - CELL_PADDING;
+        mCellHeight = mFontMetrics.bottom - mCellTop + CELL_PADDING;
+
+        mBitmap = Bitmap.createBitmap(Math.max(width, 1), Math.max(mCellHeight, 1), Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(mBitmap);
+        for(int i = 0; i < count; i++) {
+            canvas.drawText(chars, i, 1, mCellLeft[i] + CELL_PADDING, -mCellTop, paint);
+        }
+    }
+
+    /**
+     * Drop the bitmap, the atlas has to be built again before it can be drawn
+     */
+    void release() {
+        if(mBitmap != null) {
+            mBitmap.recycle();
+            mBitmap = null;
+        }
+    }
+
+    private int indexOf(char c) {
+        if(c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        for(int i = 0; i < mExtraGlyphs.length; i++) {
+            if(mExtraGlyphs[i] == c) {
+                return DIGITS.length() + i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return if every char in text has a glyph in the atlas
+     */
+    boolean canDraw(char[] text, int length) {
+        for(int i = 0; i < length; i++) {
+            if(indexOf(text[i]) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Draw text left aligned at x with its baseline at y, every char must be in the atlas
+     */
+    void draw(Canvas canvas, char[] text, int length, float x, int y) {
+        for(int i = 0; i < length; i++) {
+            int glyph = indexOf(text[i]);
+            //snap to whole pixels so the cells are copied without filtering
+            int left = Math.round(x);
+            mSrc.set(mCellLeft[glyph], 0, mCellLeft[glyph] + mCellWidth[glyph], mCellHeight);
+            mDst.set(left - CELL_PADDING, y + mCellTop, left - CELL_PADDING + mCellWidth[glyph], y + mCellTop + mCellHeight);
+            canvas.drawBitmap(mBitmap, mSrc, mDst, null);
+            x += mAdvances[glyph];
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package me.mgottein;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.text.Layout;
+
+/**
+ * Bitmap cache of the visible part of the line number column. Frames that didn't change the gutter (a caret blink,
+ * edits that keep the line count) blit the cached bitmap, small scrolls shift it and only draw the rows that were
+ * scrolled into view.
+ */
+class GutterLayer {
+
+    /**
+     * Draws the line numbers between two y coordinates of the view
+     */
+    interface Renderer {
+        void drawLineNumbers(Canvas canvas, int top, int bottom);
+    }
+
+    private Bitmap mBitmap;
+    //scratch bitmap the shifted contents are drawn into, swapped with mBitmap afterwards
+    private Bitmap mBackBitmap;
+    private final Canvas mCanvas = new Canvas();
+
+    //what the cached bitmap was drawn for
+    private Layout mLayout;
+    private int mLayoutHeight;
+    private int mLayoutTop;
+    private int mLineCount;
+    private int mGeneration;
+    private int mLeft;
+    private int mWidth;
+    private int mHeight;
+    private int mScrollY;
+
+    private long mHits;
+    private long mShifts;
+    private long mMisses;
+
+    /**
+     * Draw the gutter column [left, right) for the rows [scrollY, scrollY + height) of the view, reusing the
+     * cached bitmap when nothing it depends on changed
+     * @param layoutTop y of the layout in the view, top padding and gravity move it
+     * @param generation changes whenever something besides the layout changes how line numbers are drawn
+     */
+    void draw(Canvas canvas, Layout layout, int layoutTop, int left, int right, int scrollY, int height,
+              int generation, Renderer renderer) {
+        int width = right - left;
+        if(width <= 0 || height <= 0) {
+            return;
+        }
+        boolean sameContent = mBitmap != null && layout == mLayout && layout.getHeight() == mLayoutHeight
+                && layoutTop == mLayoutTop && layout.getLineCount() == mLineCount && generation == mGeneration
+                && left == mLeft && width == mWidth && height == mHeight;
+        int dy = scrollY - mScrollY;
+        if(sameContent && dy == 0) {
+            mHits++;
+        } else if(sameContent && Math.abs(dy) < height) {
+            mShifts++;
+            shift(dy, left, right, scrollY, height, renderer);
+        } else {
+            mMisses++;
+            redraw(layout, layoutTop, left, width, scrollY, height, generation, renderer);
+        }
+        mScrollY = scrollY;
+        canvas.drawBitmap(mBitmap, left, scrollY, null);
+    }
+
+    private void redraw(Layout layout, int layoutTop, int left, int width, int scrollY, int height, int generation,
+                        Renderer renderer) {
+        if(mBitmap == null || mBitmap.getWidth() != width || mBitmap.getHeight() != height) {
+            release();
+            mBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            mBackBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        } else {
+            mBitmap.eraseColor(Color.TRANSPARENT);
+        }
+        mLayout = layout;
+        mLayoutHeight = layout.getHeight();
+        mLayoutTop = layoutTop;
+        mLineCount = layout.getLineCount();
+        mGeneration = generation;
+        mLeft = left;
+        mWidth = width;
+        mHeight = height;
+
+        mCanvas.setBitmap(mBitmap);
+        mCanvas.save();
+        mCanvas.translate(-left, -scrollY);
+        renderer.drawLineNumbers(mCanvas, scrollY, scrollY + height);
+        mCanvas.restore();
+        mCanvas.setBitmap(null);
+    }
+
+    private void shift(int dy, int left, int right, int scrollY, int height, Renderer renderer) {
+        mBackBitmap.eraseColor(Color.TRANSPARENT);
+        mCanvas.setBitmap(mBackBitmap);
+        mCanvas.drawBitmap(mBitmap, 0, -dy, null);
+
+        //only the rows scrolled into view need to be drawn
+        int top = dy > 0 ? scrollY + height - dy : scrollY;
+        int bottom = dy > 0 ? scrollY + height : scrollY - dy;
+        mCanvas.save();
+        mCanvas.translate(-left, -scrollY);
+        mCanvas.clipRect(left, top, right, bottom);
+        renderer.drawLineNumbers(mCanvas, top, bottom);
+        mCanvas.restore();
+        mCanvas.setBitmap(null);
+
+        Bitmap swap = mBitmap;
+        mBitmap = mBackBitmap;
+        mBackBitmap = swap;
+    }
+
+    /**
+     * @return fraction of frames that reused the cached bitmap, shifted or not
+     */
+    float getHitRate() {
+        long total = mHits + mShifts + mMisses;
+        return total == 0 ? 0 : (float) (mHits + mShifts) / total;
+    }
+
+    /**
+     * Drop the cached bitmaps, the next draw starts over
+     */
+    void release() {
+        if(mBitmap != null) {
+            mBitmap.recycle();
+            mBackBitmap.recycle();
+            mBitmap = null;
+            mBackBitmap = null;
+        }
+        mLayout = null;
+    }
+}
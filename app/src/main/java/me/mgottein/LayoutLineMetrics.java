@@ -0,0 +1,145 @@
+package me.mgottein;
+
+import android.text.Layout;
+
+import java.util.Arrays;
+
+/**
+ * {@link LineMetrics} backed by a {@see android.text.Layout}. Line extents are remembered until the line changes,
+ * with centered or right gravity every {@link Layout#getLineLeft(int)} measures the line again.
+ */
+class LayoutLineMetrics implements LineMetrics {
+    private Layout mLayout;
+
+    //extents by layout line, NaN until measured
+    private float[] mLineLefts = new float[0];
+    private float[] mLineRights = new float[0];
+    //line count of the layout when the extents were last checked
+    private int mExtentsLineCount;
+
+    void setLayout(Layout layout) {
+        if(layout != mLayout || layout.getLineCount() != mExtentsLineCount) {
+            //a new layout, or it changed without telling us which lines
+            mLayout = layout;
+            invalidateExtents();
+        }
+    }
+
+    /**
+     * Forget every line extent
+     */
+    void invalidateExtents() {
+        mExtentsLineCount = mLayout != null ? mLayout.getLineCount() : 0;
+        if(mLineLefts.length < mExtentsLineCount) {
+            mLineLefts = new float[mExtentsLineCount + (mExtentsLineCount >> 2)];
+            mLineRights = new float[mLineLefts.length];
+        }
+        Arrays.fill(mLineLefts, Float.NaN);
+        Arrays.fill(mLineRights, Float.NaN);
+    }
+
+    /**
+     * Forget the extents of the paragraphs in [start, end], for changes that reflow lines without changing the text
+     * (like spans). The layout may or may not be reflowed yet.
+     */
+    void invalidateExtents(Layout layout, CharSequence text, int start, int end) {
+        if(layout != mLayout || layout.getLineCount() != mExtentsLineCount) {
+            setLayout(layout);
+            return;
+        }
+        //paragraphs always start a line, so their lines don't depend on the reflow
+        int length = text.length();
+        start = Math.max(0, Math.min(start, length));
+        end = Math.max(start, Math.min(end, length));
+        while(start > 0 && text.charAt(start - 1) != '\n') {
+            start--;
+        }
+        while(end < length && text.charAt(end) != '\n') {
+            end++;
+        }
+        int firstLine = layout.getLineForOffset(start);
+        int lastLine = Math.min(layout.getLineForOffset(end), mExtentsLineCount - 1);
+        if(firstLine <= lastLine) {
+            Arrays.fill(mLineLefts, firstLine, lastLine + 1, Float.NaN);
+            Arrays.fill(mLineRights, firstLine, lastLine + 1, Float.NaN);
+        }
+    }
+
+    /**
+     * Forget the extents of the lines an edit reflowed, the layout has to be updated for the edit already
+     * @param text text after the change
+     * @param start start of the change
+     * @param lengthAfter number of chars that replaced the old ones
+     */
+    void onTextChanged(Layout layout, CharSequence text, int start, int lengthAfter) {
+        if(layout != mLayout) {
+            setLayout(layout);
+            return;
+        }
+        int lineCount = layout.getLineCount();
+        //wrapping only moves words within a paragraph
+        int paragraphStart = start;
+        while(paragraphStart > 0 && text.charAt(paragraphStart - 1) != '\n') {
+            paragraphStart--;
+        }
+        int paragraphEnd = start + lengthAfter, length = text.length();
+        while(paragraphEnd < length && text.charAt(paragraphEnd) != '\n') {
+            paragraphEnd++;
+        }
+        int firstLine = layout.getLineForOffset(paragraphStart);
+        int lastLine = layout.getLineForOffset(paragraphEnd);
+        int movedLines = lineCount - mExtentsLineCount;
+        if(lastLine - movedLines < firstLine - 1 || lastLine + 1 > lineCount) {
+            //doesn't add up, the layout changed some other way as well
+            invalidateExtents();
+            return;
+        }
+        if(mLineLefts.length < lineCount) {
+            int size = lineCount + (lineCount >> 2);
+            mLineLefts = Arrays.copyOf(mLineLefts, size);
+            mLineRights = Arrays.copyOf(mLineRights, size);
+        }
+        //lines after the paragraph keep their extents
+        int after = lineCount - lastLine - 1;
+        System.arraycopy(mLineLefts, lastLine + 1 - movedLines, mLineLefts, lastLine + 1, after);
+        System.arraycopy(mLineRights, lastLine + 1 - movedLines, mLineRights, lastLine + 1, after);
+        Arrays.fill(mLineLefts, firstLine, lastLine + 1, Float.NaN);
+        Arrays.fill(mLineRights, firstLine, lastLine + 1, Float.NaN);
+        Arrays.fill(mLineLefts, lineCount, mLineLefts.length, Float.NaN);
+        Arrays.fill(mLineRights, lineCount, mLineRights.length, Float.NaN);
+        mExtentsLineCount = lineCount;
+    }
+
+    @Override
+    public int getLineCount() {
+        return mLayout.getLineCount();
+    }
+
+    @Override
+    public int getLineTop(int line) {
+        return mLayout.getLineTop(line);
+    }
+
+    @Override
+    public int getLineBaseline(int line) {
+        return mLayout.getLineBaseline(line);
+    }
+
+    @Override
+    public float getLineLeft(int line) {
+        float left = mLineLefts[line];
+        if(left != left) {
+            left = mLineLefts[line] = mLayout.getLineLeft(line);
+        }
+        return left;
+    }
+
+    @Override
+    public float getLineRight(int line) {
+        float right = mLineRights[line];
+        if(right != right) {
+            right = mLineRights[line] = mLayout.getLineRight(line);
+        }
+        return right;
+    }
+}
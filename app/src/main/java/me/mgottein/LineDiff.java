@@ -0,0 +1,230 @@
+package me.mgottein;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Line diff of two texts as a unified text: unchanged lines once, removed lines before the lines added in their
+ * place. Every line of the unified text maps to its line in the old and in the new text, or -1 if it isn't in one
+ * of them. Lines are compared with Myers' linear space O((N + M) D) algorithm. Doesn't depend on the Android
+ * framework.
+ */
+class LineDiff {
+    private final CharSequence mText;
+    //old and new line of every line of mText, -1 for added and removed lines
+    private final int[] mOldLines;
+    private final int[] mNewLines;
+    private final int mOldLineCount;
+    private final int mNewLineCount;
+
+    private LineDiff(CharSequence text, int[] oldLines, int[] newLines, int oldLineCount, int newLineCount) {
+        mText = text;
+        mOldLines = oldLines;
+        mNewLines = newLines;
+        mOldLineCount = oldLineCount;
+        mNewLineCount = newLineCount;
+    }
+
+    /**
+     * Diff two texts, can take a while so it shouldn't run on the UI thread
+     */
+    static LineDiff compute(CharSequence oldText, CharSequence newText) {
+        String[] oldLines = split(oldText);
+        String[] newLines = split(newText);
+        //equal lines get equal ids, so lines are only compared as ints
+        HashMap<String, Integer> ids = new HashMap<String, Integer>();
+        int[] a = toIds(oldLines, ids);
+        int[] b = toIds(newLines, ids);
+        boolean[] removed = new boolean[a.length];
+        boolean[] added = new boolean[b.length];
+        compare(a, 0, a.length, b, 0, b.length, removed, added);
+
+        int count = 0;
+        for(boolean r : removed) {
+            count += r ? 1 : 0;
+        }
+        count += b.length;
+        int[] oldMap = new int[count];
+        int[] newMap = new int[count];
+        StringBuilder text = new StringBuilder(oldText.length() + newText.length());
+        int i = 0, j = 0;
+        for(int line = 0; line < count; line++) {
+            if(i < a.length && removed[i]) {
+                oldMap[line] = i;
+                newMap[line] = -1;
+                text.append(oldLines[i++]);
+            } else if(j < b.length && added[j]) {
+                oldMap[line] = -1;
+                newMap[line] = j;
+                text.append(newLines[j++]);
+            } else {
+                oldMap[line] = i++;
+                newMap[line] = j;
+                text.append(newLines[j++]);
+            }
+            if(line + 1 < count) {
+                text.append('\n');
+            }
+        }
+        return new LineDiff(text, oldMap, newMap, a.length, b.length);
+    }
+
+    private static String[] split(CharSequence text) {
+        int count = 1;
+        for(int i = 0, length = text.length(); i < length; i++) {
+            if(text.charAt(i) == '\n') {
+                count++;
+            }
+        }
+        String[] lines = new String[count];
+        int line = 0, start = 0;
+        for(int i = 0, length = text.length(); i < length; i++) {
+            if(text.charAt(i) == '\n') {
+                lines[line++] = text.subSequence(start, i).toString();
+                start = i + 1;
+            }
+        }
+        lines[line] = text.subSequence(start, text.length()).toString();
+        return lines;
+    }
+
+    private static int[] toIds(String[] lines, HashMap<String, Integer> ids) {
+        int[] result = new int[lines.length];
+        for(int i = 0; i < lines.length; i++) {
+            Integer id = ids.get(lines[i]);
+            if(id == null) {
+                id = ids.size();
+                ids.put(lines[i], id);
+            }
+            result[i] = id;
+        }
+        return result;
+    }
+
+    //mark the lines of a[aStart, aEnd) and b[bStart, bEnd) that aren't in a shortest edit script's common lines
+    private static void compare(int[] a, int aStart, int aEnd, int[] b, int bStart, int bEnd,
+                                boolean[] removed, boolean[] added) {
+        while(aStart < aEnd && bStart < bEnd && a[aStart] == b[bStart]) {
+            aStart++;
+            bStart++;
+        }
+        while(aStart < aEnd && bStart < bEnd && a[aEnd - 1] == b[bEnd - 1]) {
+            aEnd--;
+            bEnd--;
+        }
+        if(aStart == aEnd) {
+            Arrays.fill(added, bStart, bEnd, true);
+            return;
+        }
+        if(bStart == bEnd) {
+            Arrays.fill(removed, aStart, aEnd, true);
+            return;
+        }
+        long split = findMiddleSnake(a, aStart, aEnd, b, bStart, bEnd);
+        int x = (int) (split >>> 32), y = (int) split;
+        compare(a, aStart, x, b, bStart, y, removed, added);
+        compare(a, x, aEnd, b, y, bEnd, removed, added);
+    }
+
+    //search forwards and backwards at once until the paths overlap, returns the split point as x << 32 | y
+    private static long findMiddleSnake(int[] a, int aStart, int aEnd, int[] b, int bStart, int bEnd) {
+        int n = aEnd - aStart, m = bEnd - bStart;
+        int maxD = (n + m + 1) / 2;
+        int offset = maxD, length = 2 * maxD + 2;
+        //furthest x reached on every diagonal, forwards and backwards
+        int[] forward = new int[length];
+        int[] backward = new int[length];
+        Arrays.fill(forward, -1);
+        Arrays.fill(backward, -1);
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        //diagonals that ran off the edge don't need to be searched again
+        int kStart1 = 0, kEnd1 = 0, kStart2 = 0, kEnd2 = 0;
+        for(int d = 0; d < maxD; d++) {
+            for(int k = -d + kStart1; k <= d - kEnd1; k += 2) {
+                int index = offset + k;
+                int x = k == -d || (k != d && forward[index - 1] < forward[index + 1])
+                        ? forward[index + 1] : forward[index - 1] + 1;
+                int y = x - k;
+                while(x < n && y < m && a[aStart + x] == b[bStart + y]) {
+                    x++;
+                    y++;
+                }
+                forward[index] = x;
+                if(x > n) {
+                    kEnd1 += 2;
+                } else if(y > m) {
+                    kStart1 += 2;
+                } else if(odd) {
+                    int backwardIndex = offset + delta - k;
+                    if(backwardIndex >= 0 && backwardIndex < length && backward[backwardIndex] != -1
+                            && x >= n - backward[backwardIndex]) {
+                        return (long) (aStart + x) << 32 | (bStart + y);
+                    }
+                }
+            }
+            for(int k = -d + kStart2; k <= d - kEnd2; k += 2) {
+                int index = offset + k;
+                int x = k == -d || (k != d && backward[index - 1] < backward[index + 1])
+                        ? backward[index + 1] : backward[index - 1] + 1;
+                int y = x - k;
+                while(x < n && y < m && a[aEnd - x - 1] == b[bEnd - y - 1]) {
+                    x++;
+                    y++;
+                }
+                backward[index] = x;
+                if(x > n) {
+                    kEnd2 += 2;
+                } else if(y > m) {
+                    kStart2 += 2;
+                } else if(!odd) {
+                    int forwardIndex = offset + delta - k;
+                    if(forwardIndex >= 0 && forwardIndex < length && forward[forwardIndex] != -1) {
+                        int forwardX = forward[forwardIndex];
+                        int forwardY = forwardX - (forwardIndex - offset);
+                        if(forwardX >= n - x) {
+                            return (long) (aStart + forwardX) << 32 | (bStart + forwardY);
+                        }
+                    }
+                }
+            }
+        }
+        //no common lines at all, replace everything
+        return (long) aEnd << 32 | bStart;
+    }
+
+    /**
+     * @return the unified text
+     */
+    CharSequence getText() {
+        return mText;
+    }
+
+    int getLineCount() {
+        return mOldLines.length;
+    }
+
+    /**
+     * @return line of the old text, or -1 if line was added
+     */
+    int getOldLine(int line) {
+        return mOldLines[line];
+    }
+
+    /**
+     * @return line of the new text, or -1 if line was removed
+     */
+    int getNewLine(int line) {
+        return mNewLines[line];
+    }
+
+    int getOldLineCount() {
+        return mOldLineCount;
+    }
+
+    int getNewLineCount() {
+        return mNewLineCount;
+    }
+}
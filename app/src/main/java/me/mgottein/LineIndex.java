@@ -0,0 +1,115 @@
+package me.mgottein;
+
+/**
+ * Index of the newlines in a text, kept up to date from text change deltas so source lines can be looked up in
+ * O(log n) without scanning the text
+ */
+public class LineIndex {
+    //offsets of every '\n' in the text
+    private final OffsetVector mNewlines = new OffsetVector(16);
+    //source lines of the last change
+    private int mChangedLine;
+    private int mRemovedLines;
+    private int mInsertedLines;
+    private boolean mChangeAtLineStart;
+
+    /**
+     * Rebuild the index from scratch
+     * @param text text to index
+     */
+    public void reset(CharSequence text) {
+        mNewlines.clear();
+        if(text instanceof MappedText) {
+            //found while mapping, scanning would decode the whole file
+            MappedText mappedText = (MappedText) text;
+            for(int i = 0, count = mappedText.getNewlineCount(); i < count; i++) {
+                mNewlines.add(mappedText.getNewline(i));
+            }
+            return;
+        }
+        int length = text.length();
+        for(int i = 0; i < length; i++) {
+            if(text.charAt(i) == '\n') {
+                mNewlines.add(i);
+            }
+        }
+    }
+
+    /**
+     * Update the index after lengthBefore chars starting at start were replaced by lengthAfter chars
+     * @param text the text after the change
+     * @param start start of the change
+     * @param lengthBefore number of chars that were replaced
+     * @param lengthAfter number of chars that replaced them
+     */
+    public void onTextChanged(CharSequence text, int start, int lengthBefore, int lengthAfter) {
+        int first = mNewlines.lowerBound(start);
+        int last = mNewlines.lowerBound(start + lengthBefore);
+        mChangedLine = first;
+        mRemovedLines = last - first;
+        //whole lines were replaced if the change starts a line and the removed text ended one
+        mChangeAtLineStart = getLineStart(first) == start
+                && (lengthBefore == 0 || (last > first && mNewlines.get(last - 1) == start + lengthBefore - 1));
+        mNewlines.delete(first, last);
+        mNewlines.shift(first, lengthAfter - lengthBefore);
+        int end = start + lengthAfter;
+        for(int i = start; i < end; i++) {
+            if(text.charAt(i) == '\n') {
+                mNewlines.insert(first++, i);
+            }
+        }
+        mInsertedLines = first - mChangedLine;
+    }
+
+    /**
+     * @return source line the last change started on
+     */
+    int getChangedLine() {
+        return mChangedLine;
+    }
+
+    /**
+     * @return source lines after the changed line the last change removed
+     */
+    int getRemovedLines() {
+        return mRemovedLines;
+    }
+
+    /**
+     * @return source lines after the changed line the last change inserted
+     */
+    int getInsertedLines() {
+        return mInsertedLines;
+    }
+
+    /**
+     * @return if the last change started at the start of its line and only removed whole lines, so the changed line
+     * itself was either removed or moved down rather than edited
+     */
+    boolean isChangeAtLineStart() {
+        return mChangeAtLineStart;
+    }
+
+    /**
+     * @return number of source lines, an empty text has one line
+     */
+    public int getLineCount() {
+        return mNewlines.size() + 1;
+    }
+
+    /**
+     * @param offset char offset in the text
+     * @return source line (starting at 0) containing offset
+     */
+    public int getLineForOffset(int offset) {
+        return mNewlines.lowerBound(offset);
+    }
+
+    /**
+     * @param line source line (starting at 0)
+     * @return char offset the line starts at
+     */
+    public int getLineStart(int line) {
+        return line == 0 ? 0 : mNewlines.get(line - 1) + 1;
+    }
+}
@@ -0,0 +1,136 @@
+package me.mgottein;
+
+import java.util.Arrays;
+
+/**
+ * Marker flags per source line, stored sorted by line so a range of lines is found with one binary search. Edits
+ * shift the lines after them in O(log n) plus the markers on removed lines.
+ */
+class LineMarkers {
+    //lines with markers, the marker flags are the payloads
+    private OffsetVector mLines = new OffsetVector(16, true);
+
+    int size() {
+        return mLines.size();
+    }
+
+    /**
+     * @return index of the first marked line at or after line
+     */
+    int lowerBound(int line) {
+        return mLines.lowerBound(line);
+    }
+
+    int getLine(int index) {
+        return mLines.get(index);
+    }
+
+    int getMarkers(int index) {
+        return mLines.getPayload(index);
+    }
+
+    /**
+     * @return marker flags of line, 0 if it has none
+     */
+    int get(int line) {
+        int index = mLines.lowerBound(line);
+        return index < mLines.size() && mLines.get(index) == line ? mLines.getPayload(index) : 0;
+    }
+
+    /**
+     * Replace the marker flags of line, 0 removes them
+     * @return if anything changed
+     */
+    boolean set(int line, int markers) {
+        int index = mLines.lowerBound(line);
+        if(index < mLines.size() && mLines.get(index) == line) {
+            if(mLines.getPayload(index) == markers) {
+                return false;
+            }
+            if(markers == 0) {
+                mLines.delete(index, index + 1);
+            } else {
+                mLines.setPayload(index, markers);
+            }
+            return true;
+        } else if(markers != 0) {
+            mLines.insert(index, line, markers);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Add marker to the first count lines, merged in one pass
+     */
+    void addAll(int[] lines, int count, int marker) {
+        int[] sorted = Arrays.copyOf(lines, count);
+        Arrays.sort(sorted);
+        int size = mLines.size();
+        OffsetVector merged = new OffsetVector(size + count, true);
+        int i = 0, j = 0;
+        while(i < size || j < count) {
+            int line, markers;
+            if(j == count || (i < size && mLines.get(i) < sorted[j])) {
+                line = mLines.get(i);
+                markers = mLines.getPayload(i++);
+            } else {
+                line = sorted[j++];
+                markers = marker;
+                if(i < size && mLines.get(i) == line) {
+                    markers |= mLines.getPayload(i++);
+                }
+            }
+            //the same line can be in lines more than once
+            int last = merged.size() - 1;
+            if(last >= 0 && merged.get(last) == line) {
+                merged.setPayload(last, merged.getPayload(last) | markers);
+            } else {
+                merged.insert(last + 1, line, markers);
+            }
+        }
+        mLines = merged;
+    }
+
+    /**
+     * Remove marker from every line
+     * @return if anything changed
+     */
+    boolean clear(int marker) {
+        int size = mLines.size();
+        OffsetVector kept = new OffsetVector(size, true);
+        boolean changed = false;
+        for(int i = 0; i < size; i++) {
+            int markers = mLines.getPayload(i);
+            changed |= (markers & marker) != 0;
+            markers &= ~marker;
+            if(markers != 0) {
+                kept.insert(kept.size(), mLines.get(i), markers);
+            }
+        }
+        mLines = kept;
+        return changed;
+    }
+
+    void clear() {
+        mLines.clear();
+    }
+
+    /**
+     * Follow an edit that started on line, removing removed lines after it and inserting inserted lines
+     * @param atLineStart if the edit started at the very start of line and removed whole lines: the removed lines are
+     *                    [line, line + removed) and the line after them moves with its text
+     * @return if any marker moved or was removed
+     */
+    boolean onLinesChanged(int line, int removed, int inserted, boolean atLineStart) {
+        //an edit inside line keeps its marker and takes the markers of the lines it removed after it
+        int first = mLines.lowerBound(atLineStart ? line : line + 1);
+        int last = mLines.lowerBound(atLineStart ? line + removed : line + removed + 1);
+        mLines.delete(first, last);
+        int delta = inserted - removed;
+        if(delta != 0 && first < mLines.size()) {
+            mLines.shift(first, delta);
+        }
+        return last > first || (delta != 0 && first < mLines.size());
+    }
+}
@@ -0,0 +1,16 @@
+package me.mgottein;
+
+/**
+ * The parts of {@see android.text.Layout} the line number logic needs
+ */
+interface LineMetrics {
+    int getLineCount();
+
+    int getLineTop(int line);
+
+    int getLineBaseline(int line);
+
+    float getLineLeft(int line);
+
+    float getLineRight(int line);
+}
@@ -0,0 +1,19 @@
+package me.mgottein;
+
+/**
+ * Controller that writes line numbers into a reused buffer so drawing doesn't allocate
+ */
+public interface LineNumberBufferController extends LineNumberController {
+    /**
+     * Minimum size of the buffer handed to {@link #getLineNumberText(boolean, int, char[])}
+     */
+    public static final int MIN_BUFFER_SIZE = 32;
+
+    /**
+     * @param layoutOnLeft is the line number displayed in the left column
+     * @param line line number
+     * @param buffer destination for the formatted line number, at least {@link #MIN_BUFFER_SIZE} long
+     * @return number of chars written to buffer
+     */
+    public int getLineNumberText(boolean layoutOnLeft, int line, char[] buffer);
+}
@@ -0,0 +1,227 @@
+package me.mgottein;
+
+/**
+ * Bounded LRU of controller output by line number: if the line number is shown, its text and the text's width. For
+ * controllers that are expensive to call every frame. Entries can follow their line through edits, for controllers
+ * whose output belongs to the line of text rather than its number (like blame data).
+ */
+class LineNumberCache {
+    //line numbers with an entry, the payload is the entry's slot
+    private final OffsetVector mLineNumbers = new OffsetVector(16, true);
+    private final int mMaxSize;
+    private final boolean mFollowEdits;
+    private int mSize;
+
+    //entries by slot
+    private final int[] mSlotLineNumbers;
+    private final boolean[] mShown;
+    private final char[][] mTexts;
+    private final int[] mLengths;
+    private final float[] mWidths;
+    //slots from most to least recently used
+    private final int[] mPrevious;
+    private final int[] mNext;
+    private int mHead = -1;
+    private int mTail = -1;
+
+    private long mHits;
+    private long mMisses;
+
+    LineNumberCache(int maxSize, boolean followEdits) {
+        mMaxSize = maxSize;
+        mFollowEdits = followEdits;
+        mSlotLineNumbers = new int[maxSize];
+        mShown = new boolean[maxSize];
+        mTexts = new char[maxSize][];
+        mLengths = new int[maxSize];
+        mWidths = new float[maxSize];
+        mPrevious = new int[maxSize];
+        mNext = new int[maxSize];
+    }
+
+    /**
+     * @return slot of the entry for lineNumber, the controller is only called if there was none
+     * @param buffer scratch buffer for buffer controllers
+     */
+    int get(LineNumberController controller, boolean layoutOnLeft, int lineNumber, char[] buffer,
+            TextMeasurer measurer) {
+        int index = mLineNumbers.lowerBound(lineNumber);
+        if(index < mLineNumbers.size() && mLineNumbers.get(index) == lineNumber) {
+            mHits++;
+            int slot = mLineNumbers.getPayload(index);
+            unlink(slot);
+            linkFirst(slot);
+            return slot;
+        }
+        mMisses++;
+        int slot;
+        if(mSize < mMaxSize) {
+            slot = mSize++;
+        } else {
+            slot = mTail;
+            unlink(slot);
+            int evicted = mLineNumbers.lowerBound(mSlotLineNumbers[slot]);
+            mLineNumbers.delete(evicted, evicted + 1);
+            if(evicted < index) {
+                index--;
+            }
+        }
+        mSlotLineNumbers[slot] = lineNumber;
+        mShown[slot] = controller.showLineNumber(lineNumber);
+        if(mShown[slot]) {
+            int length;
+            if(controller instanceof LineNumberBufferController) {
+                length = ((LineNumberBufferController) controller).getLineNumberText(layoutOnLeft, lineNumber, buffer);
+            } else {
+                String text = controller.getLineNumberText(layoutOnLeft, lineNumber);
+                length = text.length();
+                if(buffer.length < length) {
+                    buffer = new char[length];
+                }
+                text.getChars(0, length, buffer, 0);
+            }
+            if(mTexts[slot] == null || mTexts[slot].length < length) {
+                mTexts[slot] = new char[Math.max(length, LineNumberBufferController.MIN_BUFFER_SIZE)];
+            }
+            System.arraycopy(buffer, 0, mTexts[slot], 0, length);
+            mLengths[slot] = length;
+            mWidths[slot] = measurer.measureText(buffer, 0, length);
+        }
+        mLineNumbers.insert(index, lineNumber, slot);
+        linkFirst(slot);
+        return slot;
+    }
+
+    boolean isShown(int slot) {
+        return mShown[slot];
+    }
+
+    char[] getText(int slot) {
+        return mTexts[slot];
+    }
+
+    int getLength(int slot) {
+        return mLengths[slot];
+    }
+
+    float getWidth(int slot) {
+        return mWidths[slot];
+    }
+
+    private void unlink(int slot) {
+        int previous = mPrevious[slot], next = mNext[slot];
+        if(previous >= 0) {
+            mNext[previous] = next;
+        } else {
+            mHead = next;
+        }
+        if(next >= 0) {
+            mPrevious[next] = previous;
+        } else {
+            mTail = previous;
+        }
+    }
+
+    private void linkFirst(int slot) {
+        mPrevious[slot] = -1;
+        mNext[slot] = mHead;
+        if(mHead >= 0) {
+            mPrevious[mHead] = slot;
+        }
+        mHead = slot;
+        if(mTail < 0) {
+            mTail = slot;
+        }
+    }
+
+    /**
+     * Lines were replaced, only does something for entries that follow edits
+     * @param lineNumber number of the first changed line
+     * @param removedLines lines after it that were removed
+     * @param insertedLines lines after it that were inserted
+     */
+    void onLinesChanged(int lineNumber, int removedLines, int insertedLines) {
+        if(!mFollowEdits) {
+            return;
+        }
+        //the changed lines are formatted again, the lines after them move
+        int first = mLineNumbers.lowerBound(lineNumber);
+        int last = mLineNumbers.lowerBound(lineNumber + removedLines + 1);
+        remove(first, last);
+        int delta = insertedLines - removedLines;
+        if(delta != 0 && first < mLineNumbers.size()) {
+            mLineNumbers.shift(first, delta);
+            for(int i = first, size = mLineNumbers.size(); i < size; i++) {
+                mSlotLineNumbers[mLineNumbers.getPayload(i)] += delta;
+            }
+        }
+    }
+
+    /**
+     * Lines starting at lineNumber changed in ways that can't be followed, forget all of them
+     */
+    void onLinesChanged(int lineNumber) {
+        if(mFollowEdits) {
+            remove(mLineNumbers.lowerBound(lineNumber), mLineNumbers.size());
+        }
+    }
+
+    /**
+     * Forget the entries of [firstLineNumber, lastLineNumber]
+     */
+    void invalidate(int firstLineNumber, int lastLineNumber) {
+        remove(mLineNumbers.lowerBound(firstLineNumber), mLineNumbers.lowerBound(lastLineNumber + 1));
+    }
+
+    //remove the entries [first, last), their slots are reused from the free end
+    private void remove(int first, int last) {
+        for(int i = last - 1; i >= first; i--) {
+            int slot = mLineNumbers.getPayload(i);
+            unlink(slot);
+            mLineNumbers.delete(i, i + 1);
+            //move the last used slot into the freed one so slots stay packed
+            int moved = --mSize;
+            if(moved != slot) {
+                moveSlot(moved, slot);
+            }
+        }
+    }
+
+    private void moveSlot(int from, int to) {
+        mSlotLineNumbers[to] = mSlotLineNumbers[from];
+        mShown[to] = mShown[from];
+        char[] text = mTexts[to];
+        mTexts[to] = mTexts[from];
+        mTexts[from] = text;
+        mLengths[to] = mLengths[from];
+        mWidths[to] = mWidths[from];
+        mPrevious[to] = mPrevious[from];
+        mNext[to] = mNext[from];
+        if(mPrevious[to] >= 0) {
+            mNext[mPrevious[to]] = to;
+        } else {
+            mHead = to;
+        }
+        if(mNext[to] >= 0) {
+            mPrevious[mNext[to]] = to;
+        } else {
+            mTail = to;
+        }
+        mLineNumbers.setPayload(mLineNumbers.lowerBound(mSlotLineNumbers[to]), to);
+    }
+
+    void clear() {
+        mLineNumbers.clear();
+        mSize = 0;
+        mHead = -1;
+        mTail = -1;
+    }
+
+    long getHits() {
+        return mHits;
+    }
+
+    long getMisses() {
+        return mMisses;
+    }
+}
@@ -0,0 +1,20 @@
+package me.mgottein;
+
+/**
+ * Delegate interface that controls display of line numbers. Doesn't depend on the Android framework, so the line
+ * number logic can run on a plain JVM.
+ */
+public interface LineNumberController {
+    /**
+     * @param layoutOnLeft is the line number displayed in the left column
+     * @param line line number
+     * @return formatted line number string to be displayed
+     */
+    public String getLineNumberText(boolean layoutOnLeft, int line);
+
+    /**
+     * @param line line number
+     * @return if this line number will be shown
+     */
+    public boolean showLineNumber(int line);
+}
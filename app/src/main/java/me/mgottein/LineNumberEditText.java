@@ -2,17 +2,24 @@ package me.mgottein;
 
 import android.annotation.TargetApi;
 import android.content.Context;
+import android.graphics.Canvas;
 import android.os.Build;
 import android.os.Bundle;
 import android.text.Editable;
 import android.text.Selection;
+import android.text.Layout;
+import android.text.Spanned;
 import android.text.TextUtils;
 import android.text.method.ArrowKeyMovementMethod;
 import android.text.method.MovementMethod;
+import android.text.style.ForegroundColorSpan;
 import android.util.AttributeSet;
+import android.util.SparseIntArray;
 import android.view.accessibility.AccessibilityEvent;
 import android.view.accessibility.AccessibilityNodeInfo;
 
+import java.util.concurrent.Executor;
+
 /**
  * Created by mgottein on 3/17/15.
  *
@@ -20,6 +27,59 @@ import android.view.accessibility.AccessibilityNodeInfo;
  * to be editable
  */
 public class LineNumberEditText extends LineNumberTextView {
+
+    //source lines laid out above and below the viewport while virtualized
+    private static final int WINDOW_MARGIN_LINES = 250;
+    //slide the window once the viewport is this many source lines from its edge
+    private static final int WINDOW_EDGE_LINES = 50;
+    //source lines above and below the viewport that get highlighting spans
+    private static final int HIGHLIGHT_MARGIN_LINES = 100;
+
+    /**
+     * Highlighting span, so only the spans set for tokens are removed
+     */
+    private static class TokenSpan extends ForegroundColorSpan {
+        TokenSpan(int color) {
+            super(color);
+        }
+    }
+
+    //null unless virtualized
+    private VirtualDocument mDocument;
+    //set while the text is replaced with another part of the same document, so it isn't mistaken for an edit
+    private boolean mSwappingWindow;
+    private boolean mWindowCheckPosted;
+    private final Runnable mWindowCheck = new Runnable() {
+        @Override
+        public void run() {
+            mWindowCheckPosted = false;
+            checkWindow();
+        }
+    };
+
+    //null unless lines are folded
+    private FoldedDocument mFolds;
+    //set while folded lines are removed from or put back into the text, so it isn't mistaken for an edit
+    private boolean mFolding;
+
+    //null unless highlighting
+    private SyntaxHighlighter mHighlighter;
+    private Executor mHighlightExecutor;
+    //the job running on the executor
+    private SyntaxHighlighter.Job mHighlightJob;
+    private final SparseIntArray mTokenColors = new SparseIntArray();
+    //source lines that get highlighting spans, the visible ones and a margin around them
+    private int mHighlightFirstLine;
+    private int mHighlightLastLine = -1;
+    private boolean mTokenSpansPosted;
+    private final Runnable mApplyTokenSpans = new Runnable() {
+        @Override
+        public void run() {
+            mTokenSpansPosted = false;
+            applyTokenSpans();
+        }
+    };
+
     public LineNumberEditText(Context context) {
         super(context);
     }
@@ -54,9 +114,474 @@ public class LineNumberEditText extends LineNumberTextView {
 
     @Override
     public void setText(CharSequence text, BufferType type) {
+        if(mDocument != null && !mSwappingWindow) {
+            //replacing the text while virtualized replaces the document
+            mDocument = new VirtualDocument(text);
+            onDocumentReplaced();
+            showWindow(0, 0, false);
+            return;
+        }
+        if(!mFolding) {
+            //new text starts unfolded
+            mFolds = null;
+        }
         super.setText(text, BufferType.EDITABLE);
     }
 
+    @Override
+    protected void onTextChanged(CharSequence text, int start, int lengthBefore, int lengthAfter) {
+        if(mDocument != null && !mSwappingWindow) {
+            mDocument.onWindowChanged(text, start, lengthBefore, lengthAfter);
+        } else if(mFolds != null && !mFolding) {
+            mFolds.onProjectionChanged(text, start, lengthBefore, lengthAfter);
+        }
+        if(mHighlighter != null) {
+            //only the touched lines are tokenized again
+            mHighlighter.onTextChanged(text, start, lengthBefore, lengthAfter);
+            scheduleHighlightJob();
+        }
+        super.onTextChanged(text, start, lengthBefore, lengthAfter);
+    }
+
+    /**
+     * Show a document too large to lay out at once. Only the source lines around the viewport are laid out,
+     * scrolling slides them along the document and line numbers stay absolute. Source lines are numbered, see
+     * {@link #useLogicalLineNumbers(boolean)}. Edits are written back to the document, see
+     * {@link #getVirtualizedText()}. A {@link MappedText} is only decoded where it is read until the first edit
+     * copies it.
+     * @param text document to show
+     */
+    public void setVirtualizedText(CharSequence text) {
+        mFolds = null;
+        mDocument = new VirtualDocument(text);
+        onDocumentReplaced();
+        useLogicalLineNumbers(true);
+        showWindow(0, 0, false);
+    }
+
+    /**
+     * Stop virtualizing, the whole document is laid out again
+     */
+    public void clearVirtualizedText() {
+        if(mDocument != null) {
+            CharSequence text = mDocument.getText();
+            mDocument = null;
+            setLineNumberOffset(0);
+            //the same document, markers stay on their lines
+            mSwappingWindow = true;
+            try {
+                setText(text);
+            } finally {
+                mSwappingWindow = false;
+            }
+        }
+    }
+
+    /**
+     * @return if only the part of the document around the viewport is laid out
+     */
+    public boolean isVirtualized() {
+        return mDocument != null;
+    }
+
+    /**
+     * @return the whole document including edits, or null if not virtualized
+     */
+    public CharSequence getVirtualizedText() {
+        return mDocument != null ? mDocument.getText() : null;
+    }
+
+    /**
+     * Fold the source lines after firstLine up to lastLine, firstLine stays visible. Folded lines are left out of the
+     * layout, so they cost nothing to lay out or scroll past, and line numbers skip them. Folds inside the range are
+     * merged into it. Edits are written back to the whole text, see {@link #getUnfoldedText()}. Deleting the end of
+     * a folded line deletes the lines folded after it. Markers of folded lines aren't drawn but are kept, see
+     * {@link #setLineMarkers(int, int)}. Source lines are numbered, see {@link #useLogicalLineNumbers(boolean)}.
+     * @param firstLine source line of the whole text, starting at 0
+     * @param lastLine last source line to fold
+     * @return if anything was folded, lines can't be folded if firstLine is folded itself
+     * @throws IllegalStateException if virtualized
+     */
+    public boolean foldLines(int firstLine, int lastLine) {
+        if(mDocument != null) {
+            throw new IllegalStateException("Lines can't be folded while virtualized");
+        }
+        if(mFolds == null) {
+            mFolds = new FoldedDocument(getText());
+        }
+        int[] range = mFolds.fold(firstLine, lastLine);
+        if(range == null) {
+            if(mFolds.getFoldCount() == 0) {
+                mFolds = null;
+            }
+            return false;
+        }
+        useLogicalLineNumbers(true);
+        mFolding = true;
+        try {
+            getText().delete(range[0], range[1]);
+        } finally {
+            mFolding = false;
+        }
+        return true;
+    }
+
+    /**
+     * Show the lines folded after a line again
+     * @param line first line of the fold, a source line of the whole text
+     * @return if there was a fold at line
+     */
+    public boolean unfoldLines(int line) {
+        int index = mFolds != null ? mFolds.getFold(line) : -1;
+        if(index < 0) {
+            return false;
+        }
+        unfold(index);
+        return true;
+    }
+
+    /**
+     * Show every folded line again
+     */
+    public void unfoldAllLines() {
+        //from the end, so the offsets of the folds before stay valid
+        while(mFolds != null) {
+            unfold(mFolds.getFoldCount() - 1);
+        }
+    }
+
+    private void unfold(int index) {
+        int offset = mFolds.getFoldOffset(index);
+        CharSequence text = mFolds.getFoldText(index);
+        mFolds.removeFold(index);
+        mFolding = true;
+        try {
+            getText().insert(offset, text);
+        } finally {
+            mFolding = false;
+        }
+        if(mFolds.getFoldCount() == 0) {
+            //the text is the whole text again
+            mFolds = null;
+        }
+    }
+
+    /**
+     * @param line source line of the whole text
+     * @return if lines are folded after line
+     */
+    public boolean isFoldStart(int line) {
+        return mFolds != null && mFolds.getFold(line) >= 0;
+    }
+
+    /**
+     * @return the whole text including folded lines and edits
+     */
+    public CharSequence getUnfoldedText() {
+        return mFolds != null ? mFolds.getText() : getText();
+    }
+
+    @Override
+    int getDocumentLineOffset() {
+        return mDocument != null ? mDocument.getWindowStartLine() : 0;
+    }
+
+    @Override
+    void onSourceLinesChanged(LineIndex lines) {
+        if(mSwappingWindow || mFolding) {
+            //only the part of the document in the text changed
+            return;
+        }
+        if(mDocument != null || mFolds != null) {
+            //written back to the document already, which has the edit in document lines. Deleting a folded line's end
+            //removes the lines folded after it as well.
+            LineIndex documentLines = mDocument != null ? mDocument.getLineIndex() : mFolds.getLineIndex();
+            followDocumentEdit(documentLines.getChangedLine(), documentLines.getRemovedLines(),
+                    documentLines.getInsertedLines(), documentLines.isChangeAtLineStart());
+            return;
+        }
+        super.onSourceLinesChanged(lines);
+    }
+
+    @Override
+    boolean isReplacingDocument() {
+        return !mSwappingWindow && !mFolding;
+    }
+
+    @Override
+    protected int getNumberedLine(int line) {
+        return mFolds != null ? mFolds.toDocumentLine(line) : line;
+    }
+
+    @Override
+    protected int getLineForNumberedLine(int numberedLine) {
+        return mFolds != null ? mFolds.toProjectionLine(numberedLine) : numberedLine;
+    }
+
+    @Override
+    public boolean scrollToLineNumber(int lineNumber) {
+        if(mDocument != null) {
+            int line = Math.max(0, Math.min(lineNumber - 1, mDocument.getLineCount() - 1));
+            if(line < mDocument.getWindowStartLine() || line >= mDocument.getWindowEndLine()) {
+                //lay out the window around the line instead
+                showWindow(line, 0, false);
+                return true;
+            }
+        }
+        return super.scrollToLineNumber(lineNumber);
+    }
+
+    @Override
+    protected void scrollToFraction(float fraction) {
+        if(mDocument != null) {
+            //the layout only covers the window, go by source lines of the whole document
+            scrollToLineNumber(Math.round(fraction * (mDocument.getLineCount() - 1)) + 1);
+        } else {
+            super.scrollToFraction(fraction);
+        }
+    }
+
+    @Override
+    protected int getMaxLineNumber() {
+        if(mFolds != null) {
+            return getLineNumberOffset() + mFolds.getLineCount();
+        }
+        return mDocument != null ? mDocument.getLineCount() : super.getMaxLineNumber();
+    }
+
+    /**
+     * Highlight the text with a tokenizer. Lines are tokenized on the executor, an edit only tokenizes its lines
+     * again and the lines after them until the tokenizer state is the same as before. Spans are only set on the
+     * lines around the viewport.
+     * @param tokenizer splits lines into tokens, null to stop highlighting and remove the spans
+     * @param executor runs the tokenizer
+     */
+    public void setTokenizer(Tokenizer tokenizer, Executor executor) {
+        Editable text = getText();
+        if(mHighlighter != null) {
+            for(TokenSpan span : text.getSpans(0, text.length(), TokenSpan.class)) {
+                text.removeSpan(span);
+            }
+        }
+        //a running job's result is dropped once it's done
+        mHighlightJob = null;
+        mHighlightExecutor = executor;
+        mHighlighter = tokenizer != null ? new SyntaxHighlighter(tokenizer, text) : null;
+        scheduleHighlightJob();
+    }
+
+    /**
+     * @param type token type, see {@link TokenBuffer#addToken(int, int, int)}
+     * @param color color of tokens of that type
+     */
+    public void setTokenColor(int type, int color) {
+        mTokenColors.put(type, color);
+        if(mHighlighter != null) {
+            //spans hold their color, lines get new ones once they are around the viewport
+            mHighlighter.invalidateSpans();
+            postTokenSpans();
+        }
+    }
+
+    private void scheduleHighlightJob() {
+        if(mHighlightJob != null) {
+            return;
+        }
+        final SyntaxHighlighter.Job job = mHighlighter != null ? mHighlighter.nextJob(getText()) : null;
+        if(job == null) {
+            return;
+        }
+        mHighlightJob = job;
+        mHighlightExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                job.run();
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onHighlightJobDone(job);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onHighlightJobDone(SyntaxHighlighter.Job job) {
+        if(job != mHighlightJob) {
+            //the tokenizer was replaced
+            return;
+        }
+        mHighlightJob = null;
+        //a job made before the last edit is dropped and the lines are tokenized again
+        if(mHighlighter.apply(job)) {
+            postTokenSpans();
+        }
+        scheduleHighlightJob();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        Layout layout = getLayout();
+        if(mHighlighter != null && layout != null) {
+            //the visible lines were just found for the line numbers
+            int firstLine = mHighlighter.getLineForOffset(layout.getLineStart(getFirstVisibleLine()));
+            int lastLine = mHighlighter.getLineForOffset(layout.getLineStart(getLastVisibleLine()));
+            mHighlightFirstLine = Math.max(0, firstLine - HIGHLIGHT_MARGIN_LINES);
+            mHighlightLastLine = lastLine + HIGHLIGHT_MARGIN_LINES;
+            postTokenSpans();
+        }
+    }
+
+    //apply the spans before the next frame if a line around the viewport got new tokens
+    private void postTokenSpans() {
+        if(mTokenSpansPosted) {
+            return;
+        }
+        int lastLine = Math.min(mHighlightLastLine, mHighlighter.getLineCount() - 1);
+        for(int line = mHighlightFirstLine; line <= lastLine; line++) {
+            if(mHighlighter.isSpansDirty(line)) {
+                mTokenSpansPosted = true;
+                postOnFrame(mApplyTokenSpans);
+                return;
+            }
+        }
+    }
+
+    private void applyTokenSpans() {
+        if(mHighlighter == null) {
+            return;
+        }
+        Editable text = getText();
+        int lineCount = mHighlighter.getLineCount();
+        int lastLine = Math.min(mHighlightLastLine, lineCount - 1);
+        beginBatchEdit();
+        try {
+            for(int line = mHighlightFirstLine; line <= lastLine; line++) {
+                if(!mHighlighter.isSpansDirty(line)) {
+                    continue;
+                }
+                int lineStart = mHighlighter.getLineStart(line);
+                int lineEnd = line + 1 < lineCount ? mHighlighter.getLineStart(line + 1) - 1 : text.length();
+                for(TokenSpan span : text.getSpans(lineStart, lineEnd, TokenSpan.class)) {
+                    text.removeSpan(span);
+                }
+                int[] tokens = mHighlighter.getTokens(line);
+                for(int i = 0; i < tokens.length; i += 3) {
+                    int color = mTokenColors.indexOfKey(tokens[i + 2]);
+                    if(color >= 0) {
+                        text.setSpan(new TokenSpan(mTokenColors.valueAt(color)), lineStart + tokens[i],
+                                lineStart + tokens[i + 1], Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+                    }
+                }
+                mHighlighter.onSpansApplied(line);
+            }
+        } finally {
+            endBatchEdit();
+        }
+    }
+
+    //lay out the window around topLine and scroll so that it is topLineOffset px above the top of the viewport
+    private void showWindow(int topLine, int topLineOffset, boolean keepSelection) {
+        int selectionStart = getSelectionStart(), selectionEnd = getSelectionEnd();
+        int oldWindowOffset = mDocument.getWindowStartOffset();
+        int visibleLines = getLineHeight() > 0 ? getHeight() / getLineHeight() + 1 : 0;
+        int startLine = Math.max(0, topLine - WINDOW_MARGIN_LINES);
+        CharSequence window = mDocument.setWindow(startLine, topLine + visibleLines + WINDOW_MARGIN_LINES);
+        mSwappingWindow = true;
+        try {
+            setText(window);
+            setLineNumberOffset(startLine);
+        } finally {
+            mSwappingWindow = false;
+        }
+
+        int windowOffset = mDocument.getWindowStartOffset();
+        int topLineStart = mDocument.getLineIndex().getLineStart(topLine) - windowOffset;
+        selectionStart += oldWindowOffset - windowOffset;
+        selectionEnd += oldWindowOffset - windowOffset;
+        if(keepSelection && selectionStart >= 0 && selectionEnd <= window.length()) {
+            setSelection(selectionStart, selectionEnd);
+        } else {
+            //keep the caret on screen so the view doesn't scroll back to it
+            setSelection(topLineStart);
+        }
+        scrollToWindowOffset(topLineStart, topLineOffset);
+    }
+
+    private void scrollToWindowOffset(final int offset, final int pixelOffset) {
+        Layout layout = getLayout();
+        if(layout == null) {
+            //the new window hasn't been laid out yet
+            post(new Runnable() {
+                @Override
+                public void run() {
+                    if(getLayout() != null) {
+                        scrollToWindowOffset(offset, pixelOffset);
+                    }
+                }
+            });
+            return;
+        }
+        scrollTo(getScrollX(), layout.getLineTop(layout.getLineForOffset(offset)) + pixelOffset);
+    }
+
+    @Override
+    protected void onScrollChanged(int horiz, int vert, int oldHoriz, int oldVert) {
+        super.onScrollChanged(horiz, vert, oldHoriz, oldVert);
+        if(mDocument != null && !mSwappingWindow && !mWindowCheckPosted) {
+            mWindowCheckPosted = true;
+            post(mWindowCheck);
+        }
+    }
+
+    //slide the window if the viewport got close to one of its edges
+    private void checkWindow() {
+        Layout layout = getLayout();
+        if(mDocument == null || layout == null) {
+            return;
+        }
+        LineIndex lines = mDocument.getLineIndex();
+        int windowOffset = mDocument.getWindowStartOffset();
+        int scrollY = getScrollY();
+        int top = layout.getLineForVertical(scrollY), bottom = layout.getLineForVertical(scrollY + getHeight());
+        int topLine = lines.getLineForOffset(windowOffset + layout.getLineStart(top));
+        int bottomLine = lines.getLineForOffset(windowOffset + layout.getLineStart(bottom));
+        boolean nearStart = mDocument.getWindowStartLine() > 0
+                && topLine - mDocument.getWindowStartLine() < WINDOW_EDGE_LINES;
+        boolean nearEnd = mDocument.getWindowEndLine() < mDocument.getLineCount()
+                && mDocument.getWindowEndLine() - bottomLine < WINDOW_EDGE_LINES;
+        if(nearStart || nearEnd) {
+            //keep the first visible source line exactly where it is on screen
+            int topLineStart = lines.getLineStart(topLine) - windowOffset;
+            int topLineOffset = scrollY - layout.getLineTop(layout.getLineForOffset(topLineStart));
+            showWindow(topLine, topLineOffset, true);
+        }
+    }
+
+    //estimated height of a source line in the window, used to size the scroll bar for the whole document
+    private float getAverageLineHeight(Layout layout) {
+        return (float) layout.getHeight() / (mDocument.getWindowEndLine() - mDocument.getWindowStartLine());
+    }
+
+    @Override
+    protected int computeVerticalScrollRange() {
+        Layout layout = getLayout();
+        if(mDocument == null || layout == null) {
+            return super.computeVerticalScrollRange();
+        }
+        return (int) (getAverageLineHeight(layout) * mDocument.getLineCount());
+    }
+
+    @Override
+    protected int computeVerticalScrollOffset() {
+        Layout layout = getLayout();
+        if(mDocument == null || layout == null) {
+            return super.computeVerticalScrollOffset();
+        }
+        return (int) (getAverageLineHeight(layout) * mDocument.getWindowStartLine()) + getScrollY();
+    }
+
     /**
      * Convenience for {@link android.text.Selection#setSelection(android.text.Spannable, int, int)}.
      */
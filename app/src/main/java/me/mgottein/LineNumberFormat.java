@@ -0,0 +1,65 @@
+package me.mgottein;
+
+import java.util.Arrays;
+
+/**
+ * Allocation free helpers for writing line numbers into a reused char buffer
+ */
+public final class LineNumberFormat {
+
+    //getDigitTemplate results, by digit count
+    private static final String[] DIGIT_TEMPLATES = new String[11];
+
+    private LineNumberFormat() {
+    }
+
+    /**
+     * @param value number to count the digits of
+     * @return number of decimal digits in value, ignoring the sign
+     */
+    public static int digitCount(int value) {
+        long abs = Math.abs((long) value);
+        int digits = 1;
+        while(abs >= 10) {
+            abs /= 10;
+            digits++;
+        }
+        return digits;
+    }
+
+    /**
+     * @param digitCount number of digits, at most 10
+     * @return a string of digitCount zeros, cached
+     */
+    public static String getDigitTemplate(int digitCount) {
+        String template = DIGIT_TEMPLATES[digitCount];
+        if(template == null) {
+            char[] zeros = new char[digitCount];
+            Arrays.fill(zeros, '0');
+            template = new String(zeros);
+            DIGIT_TEMPLATES[digitCount] = template;
+        }
+        return template;
+    }
+
+    /**
+     * Write value as decimal digits into buffer
+     * @param value number to format
+     * @param buffer destination, must have room for the digits (and sign) of value after offset
+     * @param offset index in buffer to start writing at
+     * @return number of chars written
+     */
+    public static int formatDecimal(int value, char[] buffer, int offset) {
+        long abs = Math.abs((long) value);
+        int length = digitCount(value);
+        if(value < 0) {
+            buffer[offset++] = '-';
+        }
+        //fill from the end so we never need a temporary buffer
+        for(int i = offset + length - 1; i >= offset; i--) {
+            buffer[i] = (char) ('0' + (abs % 10));
+            abs /= 10;
+        }
+        return value < 0 ? length + 1 : length;
+    }
+}
@@ -0,0 +1,76 @@
+package me.mgottein;
+
+/**
+ * Line number logic that doesn't need the Android framework: gutter width, which lines are visible and where each
+ * line number is drawn
+ */
+final class LineNumberGutter {
+
+    private LineNumberGutter() {
+    }
+
+    /**
+     * The gutter width is the width of the controller's template, or the width of the largest line number text if
+     * the controller has no template
+     * @param lineCount largest line number
+     * @param buffer scratch buffer for buffer controllers
+     */
+    static int getLineNumberWidth(LineNumberController controller, boolean layoutOnLeft, int lineCount,
+                                  char[] buffer, LineNumberWidths widths) {
+        if(controller instanceof LineNumberTemplateController) {
+            return widths.getTemplateWidth(
+                    ((LineNumberTemplateController) controller).getLineNumberTemplate(layoutOnLeft, lineCount));
+        }
+        TextMeasurer measurer = widths.getMeasurer();
+        if(controller instanceof LineNumberBufferController) {
+            int length = ((LineNumberBufferController) controller).getLineNumberText(layoutOnLeft, lineCount, buffer);
+            return (int) measurer.measureText(buffer, 0, length);
+        }
+        return (int) measurer.measureText(controller.getLineNumberText(layoutOnLeft, lineCount));
+    }
+
+    /**
+     * Same as {@see android.text.Layout#getLineForVertical(int)}
+     * @return the last line whose top is at or above vertical
+     */
+    static int getLineForVertical(LineMetrics metrics, int vertical) {
+        int low = 0, high = metrics.getLineCount() - 1;
+        while(low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if(metrics.getLineTop(mid) > vertical) {
+                high = mid - 1;
+            } else {
+                low = mid;
+            }
+        }
+        return Math.max(low, 0);
+    }
+
+    /**
+     * Get the x coordinate of a line number
+     * @param leftColumn x of the left column
+     * @param rightColumn x of the right column
+     * @param leftPadding padding on the left, not counting line numbers
+     * @param rightPadding padding on the right, not counting line numbers
+     * @param textLeft x where the text starts
+     */
+    static int getLineNumberX(LineMetrics metrics, int line, boolean layoutOnLeft, boolean hugLine,
+                              int leftColumn, int rightColumn, int leftPadding, int rightPadding, int textLeft) {
+        //hugging a line means we display as close to the line as possible
+        if(layoutOnLeft) {
+            if(hugLine) {
+                int lineLeft = (int) metrics.getLineLeft(line);
+                return Math.max(leftColumn, lineLeft - leftPadding);
+            } else {
+                return leftColumn;
+            }
+        } else {
+            if(hugLine) {
+                int lineRight = (int) metrics.getLineRight(line);
+                return Math.min(rightColumn, lineRight + textLeft + rightPadding);
+            } else {
+                return rightColumn;
+            }
+        }
+    }
+}
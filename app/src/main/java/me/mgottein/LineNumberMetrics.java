@@ -0,0 +1,151 @@
+package me.mgottein;
+
+/**
+ * Counters for the line number work done by a {@link LineNumberTextView}, only collected while metrics are enabled.
+ * The frame values cover the last drawn frame (padding work done since the frame before is counted towards it),
+ * the totals cover every frame since metrics were enabled.
+ */
+public class LineNumberMetrics {
+    //counted since the last frame ended
+    private long mDrawNanos;
+    private int mLineNumbersDrawn;
+    private int mLineNumbersSkipped;
+    private long mPaddingNanos;
+    private long mMeasureNanos;
+    private int mRelayouts;
+
+    private long mFrameDrawNanos;
+    private int mFrameLineNumbersDrawn;
+    private int mFrameLineNumbersSkipped;
+    private long mFramePaddingNanos;
+    private long mFrameMeasureNanos;
+    private int mFrameRelayouts;
+
+    private long mFrames;
+    private long mTotalDrawNanos;
+    private long mTotalLineNumbersDrawn;
+    private long mTotalLineNumbersSkipped;
+    private long mTotalPaddingNanos;
+    private long mTotalMeasureNanos;
+    private long mTotalRelayouts;
+
+    void addDrawNanos(long nanos) {
+        mDrawNanos += nanos;
+    }
+
+    void lineNumberDrawn() {
+        mLineNumbersDrawn++;
+    }
+
+    void lineNumberSkipped() {
+        mLineNumbersSkipped++;
+    }
+
+    void addPaddingNanos(long nanos) {
+        mPaddingNanos += nanos;
+    }
+
+    void addMeasureNanos(long nanos) {
+        mMeasureNanos += nanos;
+    }
+
+    void relayout() {
+        mRelayouts++;
+    }
+
+    //the work counted since the last frame becomes the frame values and is added to the totals
+    void endFrame() {
+        mFrameDrawNanos = mDrawNanos;
+        mFrameLineNumbersDrawn = mLineNumbersDrawn;
+        mFrameLineNumbersSkipped = mLineNumbersSkipped;
+        mFramePaddingNanos = mPaddingNanos;
+        mFrameMeasureNanos = mMeasureNanos;
+        mFrameRelayouts = mRelayouts;
+        mFrames++;
+        mTotalDrawNanos += mDrawNanos;
+        mTotalLineNumbersDrawn += mLineNumbersDrawn;
+        mTotalLineNumbersSkipped += mLineNumbersSkipped;
+        mTotalPaddingNanos += mPaddingNanos;
+        mTotalMeasureNanos += mMeasureNanos;
+        mTotalRelayouts += mRelayouts;
+        mDrawNanos = 0;
+        mLineNumbersDrawn = 0;
+        mLineNumbersSkipped = 0;
+        mPaddingNanos = 0;
+        mMeasureNanos = 0;
+        mRelayouts = 0;
+    }
+
+    /**
+     * @return time spent drawing line numbers in onDraw
+     */
+    public long getFrameDrawNanos() {
+        return mFrameDrawNanos;
+    }
+
+    /**
+     * @return line numbers drawn
+     */
+    public int getFrameLineNumbersDrawn() {
+        return mFrameLineNumbersDrawn;
+    }
+
+    /**
+     * @return visible line numbers the controller chose not to show
+     */
+    public int getFrameLineNumbersSkipped() {
+        return mFrameLineNumbersSkipped;
+    }
+
+    /**
+     * @return time spent fixing the line number padding, including measuring
+     */
+    public long getFramePaddingNanos() {
+        return mFramePaddingNanos;
+    }
+
+    /**
+     * @return time spent measuring line number text for the padding
+     */
+    public long getFrameMeasureNanos() {
+        return mFrameMeasureNanos;
+    }
+
+    /**
+     * @return padding changes, each one causes a layout
+     */
+    public int getFrameRelayouts() {
+        return mFrameRelayouts;
+    }
+
+    /**
+     * @return frames drawn
+     */
+    public long getFrames() {
+        return mFrames;
+    }
+
+    public long getTotalDrawNanos() {
+        return mTotalDrawNanos;
+    }
+
+    public long getTotalLineNumbersDrawn() {
+        return mTotalLineNumbersDrawn;
+    }
+
+    public long getTotalLineNumbersSkipped() {
+        return mTotalLineNumbersSkipped;
+    }
+
+    public long getTotalPaddingNanos() {
+        return mTotalPaddingNanos;
+    }
+
+    public long getTotalMeasureNanos() {
+        return mTotalMeasureNanos;
+    }
+
+    public long getTotalRelayouts() {
+        return mTotalRelayouts;
+    }
+}
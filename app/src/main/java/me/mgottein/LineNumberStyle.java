@@ -0,0 +1,179 @@
+package me.mgottein;
+
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Line number paint and everything derived from it: char widths, glyph atlases and formatting buffers. Many
+ * {@link LineNumberTextView}s (like the rows of a list) can share one style instead of each measuring and rendering
+ * the same glyphs. Views pick up changes to a shared style the next time they draw. Changing the line number color,
+ * typeface or size through a view gives that view its own copy, and so does getting the style of a view that uses
+ * the default one.
+ */
+public class LineNumberStyle {
+    //the last default style, views with the same typeface and size share it
+    private static LineNumberStyle sDefaultStyle;
+    //views sharing a style rarely use more than a couple of glyph sets
+    private static final int MAX_ATLASES = 4;
+
+    private final Paint mPaint;
+    private final LineNumberWidths mWidths;
+    //atlases by the extra glyphs they were built with, null for digits only
+    private final Map<String, GlyphAtlas> mAtlases = new HashMap<String, GlyphAtlas>();
+    private final char[] mBuffer = new char[LineNumberTextView.LINE_NUMBER_BUFFER_SIZE];
+    //null until a view draws batched
+    private PosTextBatch mBatch;
+    //bumped by every change, so views can tell they need to draw (and maybe measure) again
+    private int mVersion;
+    private boolean mShared;
+    //the implicit style of views that weren't given one, nobody outside this class gets to change it
+    private boolean mDefault;
+
+    public LineNumberStyle(Typeface typeface, float textSize) {
+        mPaint = new Paint();
+        mPaint.setColor(Color.BLACK);
+        mPaint.setTypeface(typeface);
+        mPaint.setTextSize(textSize);
+        mPaint.setAntiAlias(true);
+        mPaint.setSubpixelText(true);
+        mPaint.setTextAlign(Paint.Align.LEFT);
+        mWidths = new LineNumberWidths(new PaintTextMeasurer(mPaint));
+    }
+
+    /**
+     * Copy the paint of another style
+     */
+    public LineNumberStyle(LineNumberStyle style) {
+        mPaint = new Paint(style.mPaint);
+        mWidths = new LineNumberWidths(new PaintTextMeasurer(mPaint));
+    }
+
+    /**
+     * @return a shared style for views that weren't given one
+     */
+    static LineNumberStyle getDefault(Typeface typeface, float textSize) {
+        LineNumberStyle style = sDefaultStyle;
+        if(style == null || style.mVersion != 0 || style.mPaint.getTypeface() != typeface
+                || style.mPaint.getTextSize() != textSize) {
+            style = new LineNumberStyle(typeface, textSize);
+            style.mShared = true;
+            style.mDefault = true;
+            sDefaultStyle = style;
+        }
+        return style;
+    }
+
+    public void setColor(int color) {
+        if(color != mPaint.getColor()) {
+            mPaint.setColor(color);
+            releaseAtlases();
+            mVersion++;
+        }
+    }
+
+    public int getColor() {
+        return mPaint.getColor();
+    }
+
+    public void setTypeface(Typeface typeface) {
+        if(typeface != mPaint.getTypeface()) {
+            mPaint.setTypeface(typeface);
+            onMetricsChanged();
+        }
+    }
+
+    public Typeface getTypeface() {
+        return mPaint.getTypeface();
+    }
+
+    /**
+     * @param textSize size in px
+     */
+    public void setTextSize(float textSize) {
+        if(textSize != mPaint.getTextSize()) {
+            mPaint.setTextSize(textSize);
+            onMetricsChanged();
+        }
+    }
+
+    public float getTextSize() {
+        return mPaint.getTextSize();
+    }
+
+    private void onMetricsChanged() {
+        releaseAtlases();
+        mWidths.remeasure();
+        mVersion++;
+    }
+
+    Paint getPaint() {
+        return mPaint;
+    }
+
+    LineNumberWidths getWidths() {
+        return mWidths;
+    }
+
+    /**
+     * @param glyphs characters besides 0-9 the atlas needs, may be null
+     * @return atlas for glyphs, built on first use so views with different controllers don't rebuild each other's
+     */
+    GlyphAtlas getAtlas(String glyphs) {
+        GlyphAtlas atlas = mAtlases.get(glyphs);
+        if(atlas == null) {
+            if(mAtlases.size() >= MAX_ATLASES) {
+                releaseAtlases();
+            }
+            atlas = new GlyphAtlas();
+            mAtlases.put(glyphs, atlas);
+        }
+        if(!atlas.isBuilt()) {
+            atlas.build(mPaint, glyphs);
+        }
+        return atlas;
+    }
+
+    /**
+     * Recycle the bitmaps of every atlas, they're built again when needed
+     */
+    void releaseAtlases() {
+        for(GlyphAtlas atlas : mAtlases.values()) {
+            atlas.release();
+        }
+        mAtlases.clear();
+    }
+
+    char[] getBuffer() {
+        return mBuffer;
+    }
+
+    PosTextBatch getBatch() {
+        if(mBatch == null) {
+            mBatch = new PosTextBatch();
+        }
+        return mBatch;
+    }
+
+    int getVersion() {
+        return mVersion;
+    }
+
+    boolean isShared() {
+        return mShared;
+    }
+
+    /**
+     * @return if this is a style from {@link #getDefault(Typeface, float)}, views copy it before handing it out
+     */
+    boolean isDefault() {
+        return mDefault;
+    }
+
+    void setShared() {
+        mShared = true;
+    }
+}
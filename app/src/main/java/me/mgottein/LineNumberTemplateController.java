@@ -0,0 +1,15 @@
+package me.mgottein;
+
+/**
+ * Controller that declares how wide its line numbers can get, so the gutter is sized without formatting and measuring
+ * the largest line number
+ */
+public interface LineNumberTemplateController extends LineNumberController {
+    /**
+     * @param layoutOnLeft is the line number displayed in the left column
+     * @param maxLineNumber largest line number that will be displayed
+     * @return text at least as wide as any line number up to maxLineNumber, every digit in it is sized as the widest
+     * digit
+     */
+    public CharSequence getLineNumberTemplate(boolean layoutOnLeft, int maxLineNumber);
+}
@@ -4,14 +4,25 @@ import android.annotation.TargetApi;
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.Canvas;
-import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Typeface;
+import android.graphics.drawable.Drawable;
 import android.os.Build;
+import android.text.Editable;
 import android.text.Layout;
+import android.text.SpanWatcher;
+import android.text.Spannable;
+import android.text.Spanned;
+import android.text.TextPaint;
+import android.text.TextWatcher;
+import android.text.style.MetricAffectingSpan;
+import android.text.style.ParagraphStyle;
 import android.util.AttributeSet;
+import android.view.MotionEvent;
 import android.widget.TextView;
 
+import java.util.concurrent.Executor;
+
 /**
  * Created by mgottein on 3/16/15.
  *
@@ -20,31 +31,173 @@ import android.widget.TextView;
 public class LineNumberTextView extends TextView {
 
     /**
-     * Delegate interface that controls display of line numbers
+     * Delegate interface that controls display of line numbers, see {@link LineNumberController}
+     */
+    public interface Controller extends LineNumberController {
+    }
+
+    /**
+     * Controller that writes line numbers into a reused buffer so drawing doesn't allocate, see
+     * {@link LineNumberBufferController}
+     */
+    public interface BufferController extends Controller, LineNumberBufferController {
+    }
+
+    /**
+     * Buffer controller that declares which characters it formats line numbers with, so they can be included in the
+     * glyph atlas used by {@link #RENDER_MODE_ATLAS}
      */
-    public interface Controller {
+    public interface GlyphController extends BufferController {
         /**
-         * @param layoutOnLeft is the line number displayed in the left column
-         * @param line line number
-         * @return formatted line number string to be displayed
+         * @return characters besides 0-9 that formatted line numbers may contain
          */
-        public String getLineNumberText(boolean layoutOnLeft, int line);
+        public String getLineNumberGlyphs();
+    }
+
+    /**
+     * Controller used when none is set, displays every line number in decimal
+     */
+    public static class DefaultController extends DecimalLineNumberController implements BufferController {
+    }
 
+    //the default controller has no state, every view can use the same one
+    private static final Controller DEFAULT_CONTROLLER = new DefaultController();
+
+    /**
+     * Notified after every frame while line number metrics are enabled
+     */
+    public interface MetricsListener {
         /**
-         * @param line line number
-         * @return if this line number will be shown
+         * @param metrics the view's metrics, only valid until this returns
          */
-        public boolean showLineNumber(int line);
+        public void onLineNumberFrame(LineNumberMetrics metrics);
     }
 
+    /**
+     * Minimum size of the buffer handed to {@link BufferController#getLineNumberText(boolean, int, char[])}
+     */
+    public static final int LINE_NUMBER_BUFFER_SIZE = LineNumberBufferController.MIN_BUFFER_SIZE;
+
+    /**
+     * Draw each line number with {@see android.graphics.Canvas#drawText}
+     */
+    public static final int RENDER_MODE_TEXT = 0;
+    /**
+     * Draw line numbers from a bitmap of glyphs rendered once per color, typeface and size. Needs a
+     * {@link BufferController}, anything else (or characters missing from the atlas) falls back to text.
+     */
+    public static final int RENDER_MODE_ATLAS = 1;
+    /**
+     * Collect the glyphs of every visible line number and draw them with a single
+     * {@see android.graphics.Canvas#drawPosText} call. Needs a {@link BufferController}, anything else falls back
+     * to text.
+     */
+    public static final int RENDER_MODE_BATCHED = 2;
+
+    //how much of a loaded text is measured in the background to warm up the text layout cache
+    private static final int WARM_UP_TEXT_LENGTH = 64 * 1024;
+
+    //mTextPaint, mLineNumberWidths, mLineNumberBuffer and mLineNumberBatch belong to mStyle, as do the glyph atlases
+    private LineNumberStyle mStyle;
+    private int mStyleVersion;
     private Paint mTextPaint;
     private int mLeftPadding;
     private int mRightPadding;
     private boolean mLayoutOnLeft;
     private boolean mHugLine;
+    //number source lines instead of layout lines, mLineIndex is only kept up to date while this is set
+    private boolean mLogicalLineNumbers;
+    private LineIndex mLineIndex;
+    //text changes not yet applied to mLineIndex, only collected inside a gutter batch
+    private final EditRange mPendingEdit = new EditRange();
+    private int mGutterBatchDepth;
+    private boolean mGutterUpdateScheduled;
+    //chunks waiting for the next frame to be appended, null until the first one
+    private StringBuilder mPendingAppend;
+    private int mPendingAppendNewlines;
+    private boolean mAppendScheduled;
+    private Runnable mAppendUpdate;
+    //0 keeps every line
+    private int mMaxRetainedLines;
+    //applies every change since the last frame to the gutter at once
+    private final Runnable mGutterUpdate = new Runnable() {
+        @Override
+        public void run() {
+            mGutterUpdateScheduled = false;
+            if(mGutterBatchDepth == 0) {
+                updateGutter();
+            }
+        }
+    };
+    //added to every line number, for text that doesn't start at line 1
+    private int mLineNumberOffset;
+    private boolean mRelativeLineNumbers;
+    //null until a marker is set, keeps mLineIndex around even for layout line numbers. Markers are kept in document
+    //lines, see getDocumentLineOffset()
+    private LineMarkers mLineMarkers;
+    //drawables by marker flag bit
+    private Drawable[] mLineMarkerDrawables;
+    //line (source or layout, like the line numbers) the caret is on, only tracked for relative line numbers
+    private int mCaretLine;
     private Controller mController;
+    //set when mController can format into mLineNumberBuffer
+    private BufferController mBufferController;
+    private char[] mLineNumberBuffer;
+    private LayoutLineMetrics mLayoutMetrics;
+    //forgets the extents of lines that spans reflow, null until init()
+    private SpanExtentWatcher mSpanWatcher;
+    //visible lines of the last frame, and the layout they were found in
+    private VisibleLineCache mVisibleLines;
+    private Layout mVisibleLinesLayout;
+    private int mVisibleLinesLayoutHeight;
+    private int mVisibleLinesLayoutLineCount;
+    //clip bounds of the last frame (before the shadow), valid until the scroll position, size or layout changes
+    private boolean mClipValid;
+    private int mClipScrollX;
+    private int mClipScrollY;
+    private int mClipLayoutHeight;
+    private float mClipLeft;
+    private float mClipTop;
+    private float mClipRight;
+    private float mClipBottom;
+    //advances of the line number paint, the gutter width is computed from these
+    private LineNumberWidths mLineNumberWidths;
+    private int mRenderMode;
+    private PosTextBatch mLineNumberBatch;
+    //null unless the line number layer is enabled
+    private GutterLayer mLineNumberLayer;
+    private GutterLayer.Renderer mLineNumberLayerRenderer;
+    //bumped whenever line numbers would draw differently for the same layout and scroll position
+    private int mLineNumberLayerGeneration;
+    //null unless metrics are enabled, everything that records metrics checks this first
+    private LineNumberMetrics mMetrics;
+    private MetricsListener mMetricsListener;
     //save the padding we add for the line numbers
     private int mCachedLineNumberPadding;
+    //bumped by every load and setText, a load only applies if it is still the latest
+    private volatile int mLoadGeneration;
+    //index built by a load for the text it is about to set, adopted instead of indexing the text again
+    private LineIndex mLoadedLineIndex;
+    private boolean mApplyingLoad;
+    //largest line number (and its number of digits) the cached padding was measured for
+    private int mCachedLineCount;
+    private int mCachedLineCountDigits;
+    //null unless the fast scroll thumb is enabled
+    private FastScroller mFastScroller;
+    //null unless showing a diff, its unified text is the text and its lines are the source lines
+    private LineDiff mDiff;
+    //if source lines were numbered before the diff, endDiff() goes back to it
+    private boolean mLogicalBeforeDiff;
+    //x of the new line numbers relative to the old ones
+    private int mDiffNewColumnX;
+    //null unless controller output is cached
+    private LineNumberCache mLineNumberCache;
+    //set while a stream drops its first lines, the line numbers after them don't change
+    private boolean mDroppingLines;
+    //set while setText replaces the text, the replacement isn't followed line by line
+    private boolean mReplacingText;
+    //set while the text is only copied into an editable buffer, nothing about the document changes
+    private boolean mConvertingText;
 
     public LineNumberTextView(Context context) {
         super(context);
@@ -68,14 +221,13 @@ public class LineNumberTextView extends TextView {
     }
 
     private void init(AttributeSet attrs) {
-        mTextPaint = new Paint();
-        mTextPaint.setColor(Color.BLACK);
-        mTextPaint.setTypeface(getTypeface());
-        mTextPaint.setTextSize(getTextSize());
-        mTextPaint.setAntiAlias(true);
-        mTextPaint.setSubpixelText(true);
-        mTextPaint.setTextAlign(Paint.Align.LEFT);
-        mController = getDefaultLineNumberController();
+        mRenderMode = RENDER_MODE_TEXT;
+        applyStyle(LineNumberStyle.getDefault(getTypeface(), getTextSize()));
+        mLayoutMetrics = new LayoutLineMetrics();
+        mSpanWatcher = new SpanExtentWatcher();
+        watchSpans();
+        mVisibleLines = new VisibleLineCache();
+        setController(getDefaultLineNumberController());
         mLeftPadding = getPaddingLeft();
         mRightPadding = getPaddingRight();
         mCachedLineNumberPadding = 0;
@@ -84,12 +236,23 @@ public class LineNumberTextView extends TextView {
             try {
                 mLayoutOnLeft = a.getBoolean(R.styleable.LineNumberTextView_layoutLineNumbersOnLeft, true);
                 mHugLine = a.getBoolean(R.styleable.LineNumberTextView_shouldLineNumbersHugLine, false);
+                mLogicalLineNumbers = a.getBoolean(R.styleable.LineNumberTextView_useLogicalLineNumbers, false);
+                mRelativeLineNumbers = a.getBoolean(R.styleable.LineNumberTextView_useRelativeLineNumbers, false);
             } finally {
                 a.recycle();
             }
         } else {
             mLayoutOnLeft = true;
             mHugLine = false;
+            mLogicalLineNumbers = false;
+            mRelativeLineNumbers = false;
+        }
+        if(mLogicalLineNumbers) {
+            mLineIndex = new LineIndex();
+            mLineIndex.reset(getText());
+        }
+        if(mRelativeLineNumbers) {
+            mCaretLine = getCaretLine();
         }
         fixLineNumberPadding();
     }
@@ -98,248 +261,1745 @@ public class LineNumberTextView extends TextView {
     protected void onTextChanged(CharSequence text, int start, int lengthBefore, int lengthAfter) {
         super.onTextChanged(text, start, lengthBefore, lengthAfter);
         if(mTextPaint == null) {
-            //HACK: this gets called before the constructor finishes
-            post(new Runnable() {
-                @Override
-                public void run() {
-                    fixLineNumberPadding();
-                }
-            });
-        } else {
-            fixLineNumberPadding();
+            //this gets called before the constructor finishes, init() sets up the padding for the text
+            return;
+        }
+        //lines after the change moved
+        mVisibleLines.invalidate();
+        Layout layout = getLayout();
+        if(mHugLine && layout != null) {
+            //only the reflowed lines are measured again
+            mLayoutMetrics.onTextChanged(layout, text, start, lengthAfter);
+        }
+        if(mDiff != null && mLoadedLineIndex == null && !mConvertingText) {
+            //the diff's lines don't match the text anymore, this may drop the index the diff needed
+            endDiff();
+        }
+        if(mLineIndex != null && mLoadedLineIndex != null) {
+            mLineIndex = mLoadedLineIndex;
+            mPendingEdit.clear();
+            invalidateLineNumberLayer();
+        } else if(mLineIndex != null) {
+            //markers and cached line numbers have to follow every edit on its own, a merged range would take the
+            //untouched lines between the edits with it
+            if(mGutterBatchDepth > 0 && !followsSourceLines()) {
+                mPendingEdit.add(start, lengthBefore, lengthAfter);
+            } else {
+                updateLineIndex(text, start, lengthBefore, lengthAfter);
+            }
+        } else if(mLineNumberCache != null && !mConvertingText) {
+            //without an index there's no telling how many layout lines moved
+            mLineNumberCache.onLinesChanged(mLineNumberOffset + (layout != null ? layout.getLineForOffset(start) : 0) + 1);
         }
+        scheduleGutterUpdate();
     }
 
     @Override
-    public boolean isPaddingOffsetRequired() {
-        return true;
+    protected void onSelectionChanged(int selStart, int selEnd) {
+        super.onSelectionChanged(selStart, selEnd);
+        if(mRelativeLineNumbers && mTextPaint != null && mGutterBatchDepth == 0) {
+            updateCaretLine();
+        }
     }
 
-    @Override
-    public void setPadding(int left, int top, int right, int bottom) {
-        super.setPadding(left, top, right, bottom);
-        boolean fixPadding = mLeftPadding != left || mRightPadding != right;
-        mLeftPadding = left;
-        mRightPadding = right;
-        if(fixPadding) {
-            fixLineNumberPadding();
+    /**
+     * Defer line number work until {@link #endGutterBatch()}, text changed in between updates the line index and
+     * padding once. Batches nest, and {@link #beginBatchEdit()} starts one as well.
+     */
+    public void beginGutterBatch() {
+        mGutterBatchDepth++;
+    }
+
+    /**
+     * End a batch started by {@link #beginGutterBatch()}, the outermost one applies every change made during it
+     */
+    public void endGutterBatch() {
+        if(mGutterBatchDepth > 0 && --mGutterBatchDepth == 0) {
+            if(mGutterUpdateScheduled) {
+                removeCallbacks(mGutterUpdate);
+                mGutterUpdateScheduled = false;
+            }
+            updateGutter();
         }
     }
 
+    @Override
+    public void onBeginBatchEdit() {
+        super.onBeginBatchEdit();
+        beginGutterBatch();
+    }
+
+    @Override
+    public void onEndBatchEdit() {
+        super.onEndBatchEdit();
+        endGutterBatch();
+    }
+
     /**
-     * Change how line numbers are laid out
-     * @param layoutLineNumbersOnLeft if line numbers should be placed in the left column
+     * Append a chunk of a stream, like a log. Chunks are collected and appended once per frame, see
+     * {@link #setMaxRetainedLines(int)} to keep only the end of the stream.
+     * @param chunk text to append, doesn't need to end at a line break
      */
-    public void layoutLineNumbersOnLeft(boolean layoutLineNumbersOnLeft) {
-        boolean oldLayoutDirection = mLayoutOnLeft;
-        mLayoutOnLeft = layoutLineNumbersOnLeft;
-        if(oldLayoutDirection != mLayoutOnLeft) {
-            fixLineNumberPadding();
+    public void appendChunk(CharSequence chunk) {
+        if(mPendingAppend == null) {
+            mPendingAppend = new StringBuilder();
+            mAppendUpdate = new Runnable() {
+                @Override
+                public void run() {
+                    mAppendScheduled = false;
+                    flushAppendedChunks();
+                }
+            };
+        }
+        mPendingAppend.append(chunk);
+        for(int i = 0, length = chunk.length(); i < length; i++) {
+            if(chunk.charAt(i) == '\n') {
+                mPendingAppendNewlines++;
+            }
+        }
+        if(!mAppendScheduled) {
+            mAppendScheduled = true;
+            postOnFrame(mAppendUpdate);
         }
     }
 
-    /*
-     * @return if line numbers should be placed in the left column
+    /**
+     * Keep at most maxLines source lines, appending drops the oldest ones. Dropped lines are added to the line number
+     * offset so the remaining lines keep their numbers. Source lines are numbered while lines are dropped, see
+     * {@link #useLogicalLineNumbers(boolean)}.
+     * @param maxLines lines to keep, 0 keeps every line
      */
-    public boolean layoutLineNumbersOnLeft() {
-        return mLayoutOnLeft;
+    public void setMaxRetainedLines(int maxLines) {
+        mMaxRetainedLines = Math.max(0, maxLines);
+        if(mMaxRetainedLines > 0) {
+            useLogicalLineNumbers(true);
+        }
     }
 
     /**
-     * Change the controller used to display line numbers
-     * @param controller
+     * @return source lines kept while appending chunks, 0 if every line is kept
      */
-    public void setLineNumberController(Controller controller) {
-        if(controller == null) {
-            throw new IllegalStateException("controller must not be null");
+    public int getMaxRetainedLines() {
+        return mMaxRetainedLines;
+    }
+
+    //Append every chunk since the last frame, dropping the lines that don't need to be laid out in the first place
+    private void flushAppendedChunks() {
+        if(mPendingAppend.length() == 0) {
+            return;
+        }
+        CharSequence append = mPendingAppend;
+        int appendNewlines = mPendingAppendNewlines;
+        Editable editable = getEditableText();
+        if(editable == null) {
+            //only the first flush converts the text
+            editable = makeEditable();
+        }
+        beginGutterBatch();
+        try {
+            if(mMaxRetainedLines > 0 && mLineIndex != null) {
+                applyPendingEdit();
+                //the last line of the text continues on the first line of the chunks
+                int textLines = mLineIndex.getLineCount();
+                int dropLines = textLines + appendNewlines - mMaxRetainedLines;
+                if(dropLines > 0) {
+                    mDroppingLines = true;
+                    try {
+                        if(dropLines < textLines) {
+                            editable.delete(0, mLineIndex.getLineStart(dropLines));
+                        } else {
+                            //the whole text goes, and the start of the chunks with it
+                            editable.clear();
+                            onDocumentReplaced();
+                            append = append.subSequence(getLineStart(append, dropLines - textLines + 1),
+                                    append.length());
+                        }
+                    } finally {
+                        mDroppingLines = false;
+                    }
+                    mLineNumberOffset += dropLines;
+                    invalidateLineNumberLayer();
+                }
+            }
+            editable.append(append);
+        } finally {
+            mPendingAppend.setLength(0);
+            mPendingAppendNewlines = 0;
+            //the largest line number counts every line ever appended, so the gutter only grows
+            endGutterBatch();
+        }
+    }
+
+    //TextView only copies its text into an editable buffer through setText, which mustn't look like a new document
+    private Editable makeEditable() {
+        mConvertingText = true;
+        try {
+            setText(getText(), BufferType.EDITABLE);
+        } finally {
+            mConvertingText = false;
+        }
+        return getEditableText();
+    }
+
+    //offset after the n-th newline in text
+    private static int getLineStart(CharSequence text, int n) {
+        for(int i = 0, length = text.length(); i < length; i++) {
+            if(text.charAt(i) == '\n' && --n == 0) {
+                return i + 1;
+            }
+        }
+        return text.length();
+    }
+
+    //Changes made outside a batch are applied to the gutter once per frame
+    private void scheduleGutterUpdate() {
+        if(mGutterBatchDepth > 0 || mGutterUpdateScheduled) {
+            return;
+        }
+        mGutterUpdateScheduled = true;
+        postOnFrame(mGutterUpdate);
+    }
+
+    void postOnFrame(Runnable runnable) {
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            //runs on the next Choreographer frame, before it is drawn
+            postOnAnimation(runnable);
+        } else {
+            post(runnable);
+        }
+    }
+
+    private void updateGutter() {
+        applyPendingEdit();
+        updateLineNumberPadding();
+        if(mRelativeLineNumbers) {
+            updateCaretLine();
+        }
+    }
+
+    //edits are only merged while nothing follows them, see applyPendingEdit()
+    private boolean followsSourceLines() {
+        return mLineMarkers != null || mLineNumberCache != null;
+    }
+
+    private void updateLineIndex(CharSequence text, int start, int lengthBefore, int lengthAfter) {
+        mLineIndex.onTextChanged(text, start, lengthBefore, lengthAfter);
+        int line = mLineIndex.getChangedLine();
+        int removedLines = mLineIndex.getRemovedLines(), insertedLines = mLineIndex.getInsertedLines();
+        //source numbering isn't tied to the layout lines the layer checks, a newline that was removed or inserted
+        //can move numbers to other rows even if the line count stays the same
+        if(removedLines > 0 || insertedLines > 0) {
+            invalidateLineNumberLayer();
+        }
+        if(followsSourceLines() && !mReplacingText) {
+            onSourceLinesChanged(mLineIndex);
         }
-        mController = controller;
-        invalidate();
     }
 
     /**
-     * @return get the controller used to display line numbers
+     * The text's source lines changed by an edit, see {@link LineIndex#getChangedLine()}. Markers and cached line
+     * numbers follow the document lines that changed.
+     * @param lines index of the text, just updated for the change
      */
-    public Controller getLineNumberController() {
-        return mController;
+    void onSourceLinesChanged(LineIndex lines) {
+        followDocumentEdit(getNumberedLine(lines.getChangedLine()), lines.getRemovedLines(),
+                lines.getInsertedLines(), lines.isChangeAtLineStart());
     }
 
     /**
-     * @return if line numbers are hugging the line or in the left or right column
+     * @return if {@link #setText(CharSequence, BufferType)} replaces the document, rather than showing another part of
+     * it
      */
-    public boolean doLineNumbersHugLine() {
-        return mHugLine;
+    boolean isReplacingDocument() {
+        return true;
     }
 
     /**
-     * Set if line numbers hug the line or are in the left or right column
-     * @param hugLine
+     * Move markers and cached line numbers along with an edit of the document
+     * @param line document line the edit started on
+     * @param removedLines document lines after it that were removed
+     * @param insertedLines document lines after it that were inserted
+     * @param atLineStart if the edit started at the start of line and only removed whole lines, see {@link LineMarkers}
      */
-    public void doLineNumbersHugLine(boolean hugLine) {
-        boolean doInvalidate = hugLine != mHugLine;
-        mHugLine = hugLine;
-        if(doInvalidate) {
-            invalidate();
+    void followDocumentEdit(int line, int removedLines, int insertedLines, boolean atLineStart) {
+        if(mLineMarkers != null && mLineMarkers.onLinesChanged(line, removedLines, insertedLines, atLineStart)) {
+            invalidateLineNumberLayer();
+        }
+        //lines a stream drops take their line numbers with them, the cache only has to forget them eventually
+        if(mLineNumberCache != null && !mDroppingLines) {
+            mLineNumberCache.onLinesChanged(getDocumentLineNumber(line), removedLines, insertedLines);
         }
     }
 
     /**
-     * Change line number color
-     * @param color
+     * A new document replaced the old one, nothing that followed the old one's lines applies to it
      */
-    public void setLineNumberColor(int color) {
-        boolean doInvalidate = color != mTextPaint.getColor();
-        mTextPaint.setColor(color);
-        if(doInvalidate) {
-            invalidate();
+    void onDocumentReplaced() {
+        if(mLineMarkers != null && mLineMarkers.size() > 0) {
+            mLineMarkers.clear();
+            invalidateLineNumberLayer();
+        }
+        if(!mDroppingLines) {
+            clearLineNumberCache();
+        }
+    }
+
+    //cached controller output was formatted or measured for a controller, style or numbering that changed
+    private void clearLineNumberCache() {
+        if(mLineNumberCache != null) {
+            mLineNumberCache.clear();
         }
     }
 
     /**
-     * Change line number typeface
-     * @param typeface
+     * @return the first source line of the text in the document it is part of, markers are kept in document lines.
+     * 0 unless only part of the document is in the text.
      */
-    public void setLineNumberTypeface(Typeface typeface) {
-        boolean doInvalidate = typeface != mTextPaint.getTypeface();
-        mTextPaint.setTypeface(typeface);
-        if(doInvalidate) {
-            invalidate();
+    int getDocumentLineOffset() {
+        return 0;
+    }
+
+    //line number shown for a document line
+    private int getDocumentLineNumber(int line) {
+        return mLineNumberOffset - getDocumentLineOffset() + line + 1;
+    }
+
+    //bring mLineIndex up to date with the text changed during a batch, before anything reads it or starts following
+    //source lines
+    private void applyPendingEdit() {
+        if(!mPendingEdit.isEmpty()) {
+            if(mLineIndex != null) {
+                updateLineIndex(getText(), mPendingEdit.getStart(), mPendingEdit.getLengthBefore(),
+                        mPendingEdit.getLengthAfter());
+            }
+            mPendingEdit.clear();
+        }
+    }
+
+    //Only redraw the line numbers when the caret moves to another line
+    private void updateCaretLine() {
+        int caretLine = getCaretLine();
+        if(caretLine != mCaretLine) {
+            mCaretLine = caretLine;
+            invalidateLineNumberLayer();
+            invalidateGutter();
         }
     }
 
+    private int getCaretLine() {
+        int offset = Math.max(0, getSelectionEnd());
+        if(mLogicalLineNumbers) {
+            applyPendingEdit();
+            return mLineIndex.getLineForOffset(offset);
+        }
+        Layout layout = getLayout();
+        return layout != null ? layout.getLineForOffset(offset) : 0;
+    }
+
     /**
-     * Change line number size (in px, uses {@see android.graphics.Paint#setTextSize(int)})
-     * @param size
+     * Redraw the line numbers of some lines, without redrawing the text. For controllers whose text or visibility
+     * changes on its own.
+     * @param firstLineNumber first line number to redraw, as shown without relative line numbers
+     * @param lastLineNumber last line number to redraw
      */
-    public void setLineNumberSize(int size) {
-        boolean doInvalidate = size != mTextPaint.getTextSize();
-        mTextPaint.setTextSize(size);
-        if(doInvalidate) {
-            invalidate();
+    public void invalidateLineNumbers(int firstLineNumber, int lastLineNumber) {
+        Layout layout = getLayout();
+        if(layout == null) {
+            return;
+        }
+        invalidateLineNumberLayer();
+        if(mLineNumberCache != null) {
+            mLineNumberCache.invalidate(firstLineNumber, lastLineNumber);
+        }
+        int firstLine, lastLine;
+        int first = firstLineNumber - mLineNumberOffset - 1, last = lastLineNumber - mLineNumberOffset - 1;
+        if(mLogicalLineNumbers) {
+            //every layout line of the source lines
+            applyPendingEdit();
+            int lineCount = mLineIndex.getLineCount();
+            first = Math.max(0, Math.min(getLineForNumberedLine(first), lineCount - 1));
+            last = Math.max(first, Math.min(getLineForNumberedLine(last), lineCount - 1));
+            firstLine = layout.getLineForOffset(mLineIndex.getLineStart(first));
+            lastLine = last + 1 < lineCount
+                    ? layout.getLineForOffset(mLineIndex.getLineStart(last + 1) - 1)
+                    : layout.getLineCount() - 1;
+        } else {
+            firstLine = Math.max(0, Math.min(first, layout.getLineCount() - 1));
+            lastLine = Math.max(firstLine, Math.min(last, layout.getLineCount() - 1));
         }
+        int offset = getBaseline() - layout.getLineBaseline(0);
+        invalidateGutter(layout.getLineTop(firstLine) + offset, layout.getLineBottom(lastLine) + offset);
     }
 
     /**
-     * @return the default controller used to display line numbers
+     * Scroll so that a line is at the top of the view. Lines are looked up in the line index or the layout, the text
+     * isn't scanned.
+     * @param lineNumber line number as shown without relative line numbers
+     * @return false if the text hasn't been laid out yet
      */
-    protected Controller getDefaultLineNumberController() {
-        return new Controller() {
-            @Override
-            public String getLineNumberText(boolean layoutOnLeft, int line) {
-                return Integer.toString(line);
-            }
-
-            @Override
-            public boolean showLineNumber(int line) {
-                return true;
-            }
-        };
+    public boolean scrollToLineNumber(int lineNumber) {
+        Layout layout = getLayout();
+        if(layout == null) {
+            return false;
+        }
+        int line = lineNumber - mLineNumberOffset - 1;
+        int layoutLine;
+        if(mLogicalLineNumbers) {
+            applyPendingEdit();
+            line = Math.max(0, Math.min(getLineForNumberedLine(line), mLineIndex.getLineCount() - 1));
+            layoutLine = layout.getLineForOffset(mLineIndex.getLineStart(line));
+        } else {
+            layoutLine = Math.max(0, Math.min(line, layout.getLineCount() - 1));
+        }
+        scrollTo(getScrollX(), Math.min(layout.getLineTop(layoutLine), getMaxScrollY(layout)));
+        return true;
     }
 
     /**
-     * Setup a slightly modified version of the clipping bounds {@see android.widget.TextView} uses
-     * @param canvas
+     * @return line number (as shown without relative line numbers) of the line at the top of the view
      */
-    private void textViewClip(Canvas canvas) {
-        int scrollX = getScrollX(), scrollY = getScrollY(),
-                left = getLeft(), right = getRight(),
-                top = getTop(), bottom = getBottom();
-        int maxScrollY = getLayout().getHeight() - bottom - top - getCompoundPaddingBottom() - getCompoundPaddingTop();
-
-        //ignore left and right padding
-        float clipLeft = scrollX;
-        float clipTop = (scrollY == 0) ? 0 : getExtendedPaddingTop() + scrollY;
-        float clipRight = right - left + scrollX;
-        float clipBottom = bottom - top + scrollY -
-                ((scrollY == maxScrollY) ? 0 : getExtendedPaddingBottom());
+    public int getLineNumberAtScrollY() {
+        Layout layout = getLayout();
+        if(layout == null) {
+            return mLineNumberOffset + 1;
+        }
+        int layoutLine = layout.getLineForVertical(getScrollY());
+        if(mLogicalLineNumbers) {
+            applyPendingEdit();
+            return mLineNumberOffset + getNumberedLine(mLineIndex.getLineForOffset(layout.getLineStart(layoutLine))) + 1;
+        }
+        return mLineNumberOffset + layoutLine + 1;
+    }
 
-        //account for shadow if it exists
-        if(Build.VERSION.SDK_INT > Build.VERSION_CODES.JELLY_BEAN) {
-            float shadowRadius = getShadowRadius();
-            if (shadowRadius != 0) {
-                float shadowDx = getShadowDx(), shadowDy = getShadowDy();
-                clipLeft += Math.min(0, shadowDx - shadowRadius);
-                clipRight += Math.max(0, shadowDx + shadowRadius);
+    private int getMaxScrollY(Layout layout) {
+        return Math.max(0, layout.getHeight() - (getHeight() - getExtendedPaddingTop() - getExtendedPaddingBottom()));
+    }
 
-                clipTop += Math.min(0, shadowDy - shadowRadius);
-                clipBottom += Math.max(0, shadowDy + shadowRadius);
-            }
+    /**
+     * Show a thumb on the right edge that scrolls the whole text when dragged, labeled with the line number it
+     * scrolled to while dragging
+     */
+    public void setFastScrollEnabled(boolean enabled) {
+        if(enabled != (mFastScroller != null)) {
+            mFastScroller = enabled ? new FastScroller(getResources().getDisplayMetrics().density) : null;
+            invalidate();
         }
+    }
 
-        canvas.clipRect(clipLeft, clipTop, clipRight, clipBottom);
+    public boolean isFastScrollEnabled() {
+        return mFastScroller != null;
     }
 
-    @Override
-    protected void onDraw(Canvas canvas) {
-        super.onDraw(canvas);
-        canvas.save();
-        textViewClip(canvas);
+    //how far down the text the view is scrolled, from 0 to 1, or -1 if it can't scroll
+    private float getScrollFraction() {
+        int range = computeVerticalScrollRange() - computeVerticalScrollExtent();
+        return range > 0 ? Math.max(0, Math.min(1, (float) computeVerticalScrollOffset() / range)) : -1;
+    }
 
+    /**
+     * Scroll to a fraction of the whole text, the fast scroll thumb calls this while it is dragged
+     * @param fraction from 0 for the top to 1 for the bottom
+     */
+    protected void scrollToFraction(float fraction) {
         Layout layout = getLayout();
+        if(layout != null) {
+            scrollTo(getScrollX(), Math.round(fraction * getMaxScrollY(layout)));
+        }
+    }
 
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if(mFastScroller != null) {
+            switch(event.getActionMasked()) {
+                case MotionEvent.ACTION_DOWN:
+                    float fraction = getScrollFraction();
+                    if(fraction >= 0 && mFastScroller.onDown(event.getX(), event.getY(), getWidth(), getHeight(), fraction)) {
+                        if(getParent() != null) {
+                            getParent().requestDisallowInterceptTouchEvent(true);
+                        }
+                        invalidate();
+                        return true;
+                    }
+                    break;
+                case MotionEvent.ACTION_MOVE:
+                    if(mFastScroller.isDragging()) {
+                        scrollToFraction(mFastScroller.onMove(event.getY(), getHeight()));
+                        invalidate();
+                        return true;
+                    }
+                    break;
+                case MotionEvent.ACTION_UP:
+                case MotionEvent.ACTION_CANCEL:
+                    if(mFastScroller.isDragging()) {
+                        mFastScroller.onUp();
+                        invalidate();
+                        return true;
+                    }
+                    break;
+            }
+        }
+        return super.onTouchEvent(event);
+    }
 
+    //invalidate only the column the line numbers are drawn in
+    private void invalidateGutter() {
         int scrollY = getScrollY();
-        //only display all the line numbers between the first and last line
-        int firstLine = layout.getLineForVertical(scrollY),
-                lastLine = layout.getLineForVertical(scrollY + (getHeight() - getExtendedPaddingTop() - getExtendedPaddingBottom()));
+        invalidateGutter(scrollY, scrollY + getHeight());
+    }
 
-        //the y position starts at the baseline of the first line
-        int positionY = getBaseline() + (layout.getLineBaseline(firstLine) - layout.getLineBaseline(0));
-        drawLineNumber(canvas, layout, positionY, firstLine);
-        for(int i = firstLine + 1; i <= lastLine; i++) {
-            //get the next y position using the difference between the current and last baseline
-            positionY += layout.getLineBaseline(i) - layout.getLineBaseline(i - 1);
-            drawLineNumber(canvas, layout, positionY, i);
+    private void invalidateGutter(int top, int bottom) {
+        if(mHugLine) {
+            //hugging line numbers are drawn next to the text
+            invalidate(0, top, getWidth(), bottom);
+        } else {
+            invalidate(getGutterLeft(), top, getGutterRight(), bottom);
         }
-        canvas.restore();
     }
 
-    private void drawLineNumber(Canvas canvas, Layout layout, int positionY, int line) {
-        if (mController.showLineNumber(line + 1)) {
-            int positionX = getLineNumberX(layout, line);
-            canvas.drawText(mController.getLineNumberText(mLayoutOnLeft, line + 1), positionX, positionY, mTextPaint);
+    @Override
+    public void setText(CharSequence text, BufferType type) {
+        if(mConvertingText) {
+            //the same text, markers and cached line numbers stay on their lines
+            mReplacingText = true;
+            try {
+                super.setText(text, type);
+            } finally {
+                mReplacingText = false;
+            }
+            watchSpans();
+            return;
+        }
+        if(!mApplyingLoad) {
+            //the newest text wins over any load still running
+            mLoadGeneration++;
+        }
+        if(mPendingAppend != null) {
+            //and over chunks that weren't appended yet
+            mPendingAppend.setLength(0);
+            mPendingAppendNewlines = 0;
         }
+        CharSequence oldText = getText();
+        boolean hadText = oldText != null && oldText.length() > 0;
+        mReplacingText = true;
+        try {
+            super.setText(text, type);
+        } finally {
+            mReplacingText = false;
+        }
+        if(mTextPaint != null && isReplacingDocument()) {
+            if(hadText) {
+                onDocumentReplaced();
+            } else {
+                //markers set before the first text are meant for it
+                clearLineNumberCache();
+            }
+        }
+        if(mLayoutMetrics != null) {
+            //a text with other spans can keep the layout and its line count
+            mLayoutMetrics.invalidateExtents();
+        }
+        watchSpans();
     }
 
-    //Whenever the padding changes (or is set up for the first time) we need to add enough padding to the correct side to show our line numbers
-    private void fixLineNumberPadding() {
-        mCachedLineNumberPadding = getLineNumberPadding();
-        if(mLayoutOnLeft) {
-            super.setPadding(mLeftPadding + mCachedLineNumberPadding, getPaddingTop(), mRightPadding, getPaddingBottom());
-        } else {
-            super.setPadding(mLeftPadding, getPaddingTop(), mRightPadding + mCachedLineNumberPadding, getPaddingBottom());
+    //TextView copies the text it is given, the watcher goes on the copy
+    private void watchSpans() {
+        CharSequence text = getText();
+        if(mSpanWatcher != null && text instanceof Spannable) {
+            Spannable spannable = (Spannable) text;
+            //it may have come along with a text taken from this view
+            spannable.removeSpan(mSpanWatcher);
+            spannable.setSpan(mSpanWatcher, 0, spannable.length(), Spanned.SPAN_INCLUSIVE_INCLUSIVE);
         }
-        invalidate();
     }
 
-    //the line number padding is calculated as the width of the largest line number text
-    private int getLineNumberPadding() {
-        Layout layout = getLayout();
-        int lineCount = layout != null ? layout.getLineCount() : 1;
-        return (int) mTextPaint.measureText(mController.getLineNumberText(mLayoutOnLeft, lineCount));
-    }
-
-    //get the x coordinate of a line number
-    private int getLineNumberX(Layout layout, int line) {
-        //hugging a line means we display as close to the line as possible
-        if(mLayoutOnLeft) {
-            //padding offset ignores the padding we set - we are displaying content inside that padding
-            int leftColumn = getLeftPaddingOffset();
-            if(mHugLine) {
-                int lineLeft = (int) layout.getLineLeft(line);
-                return Math.max(leftColumn, lineLeft - mLeftPadding);
-            } else {
-                return leftColumn;
-            }
-        } else {
-            //getRightPaddingOffset() returns a - number
-            int rightColumn = getWidth() + getRightPaddingOffset() - mCachedLineNumberPadding;
-            if(mHugLine) {
-                int lineRight = (int) layout.getLineRight(line);
-                return Math.min(rightColumn, lineRight + getCompoundPaddingLeft() + mRightPadding);
-            } else {
-                return rightColumn;
+    /**
+     * Styling the text reflows it without an onTextChanged, hugging line numbers would be drawn at the old extents.
+     * Spans that only move because the text was edited are left to onTextChanged.
+     */
+    private class SpanExtentWatcher implements SpanWatcher, TextWatcher {
+        private boolean mEditing;
+
+        private void onSpanReflow(Spannable text, Object what, int start, int end) {
+            Layout layout = getLayout();
+            if(mHugLine && !mEditing && layout != null
+                    && (what instanceof MetricAffectingSpan || what instanceof ParagraphStyle)) {
+                mLayoutMetrics.invalidateExtents(layout, text, start, end);
+                invalidateGutter();
             }
         }
+
+        @Override
+        public void onSpanAdded(Spannable text, Object what, int start, int end) {
+            onSpanReflow(text, what, start, end);
+        }
+
+        @Override
+        public void onSpanRemoved(Spannable text, Object what, int start, int end) {
+            onSpanReflow(text, what, start, end);
+        }
+
+        @Override
+        public void onSpanChanged(Spannable text, Object what, int oldStart, int oldEnd, int newStart, int newEnd) {
+            onSpanReflow(text, what, Math.min(oldStart, newStart), Math.max(oldEnd, newEnd));
+        }
+
+        @Override
+        public void beforeTextChanged(CharSequence text, int start, int count, int after) {
+            mEditing = true;
+        }
+
+        @Override
+        public void onTextChanged(CharSequence text, int start, int before, int count) {
+        }
+
+        @Override
+        public void afterTextChanged(Editable text) {
+            mEditing = false;
+        }
+    }
+
+    /**
+     * Set the text without indexing it on the UI thread. The source line index and the gutter width are computed on
+     * executor (which also warms up the text layout cache on Lollipop and up), then applied together with the text
+     * in one step on the UI thread. Another load or {@link #setText(CharSequence)} cancels this one. The controller is
+     * called from executor.
+     * @param text text to show
+     * @param executor background executor to index the text on
+     */
+    public void loadText(final CharSequence text, Executor executor) {
+        final int generation = ++mLoadGeneration;
+        final LineNumberController controller = mController;
+        final boolean layoutOnLeft = mLayoutOnLeft;
+        final int lineNumberOffset = mLineNumberOffset;
+        final Paint paint = new Paint(mTextPaint);
+        final TextPaint textPaint = new TextPaint(getPaint());
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if(generation != mLoadGeneration) {
+                    return;
+                }
+                final LineIndex lineIndex = new LineIndex();
+                lineIndex.reset(text);
+                if(generation != mLoadGeneration) {
+                    return;
+                }
+                final int maxLineNumber = lineNumberOffset + lineIndex.getLineCount();
+                final int padding = LineNumberGutter.getLineNumberWidth(controller, layoutOnLeft, maxLineNumber,
+                        new char[LINE_NUMBER_BUFFER_SIZE], new LineNumberWidths(new PaintTextMeasurer(paint)));
+                if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                    warmUpTextLayout(textPaint, text, generation);
+                }
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if(generation == mLoadGeneration) {
+                            applyLoadedText(text, lineIndex, maxLineNumber, padding);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Show the line diff of two texts. The unified text is shown with the old and new line numbers side by side,
+     * blank where a line was added or removed. The diff and the line index of the unified text are computed on
+     * executor, the gutter is measured once when they are applied. Both columns are drawn with the line number render
+     * mode and layer. Setting or editing the text ends the diff, like
+     * {@link #loadText(CharSequence, Executor)} the texts must not change until then.
+     */
+    public void setDiffText(final CharSequence oldText, final CharSequence newText, Executor executor) {
+        final int generation = ++mLoadGeneration;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if(generation != mLoadGeneration) {
+                    return;
+                }
+                final LineDiff diff = LineDiff.compute(oldText, newText);
+                final LineIndex lineIndex = new LineIndex();
+                lineIndex.reset(diff.getText());
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if(generation == mLoadGeneration) {
+                            applyDiff(diff, lineIndex);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * @return if a diff set with {@link #setDiffText(CharSequence, CharSequence, Executor)} is shown
+     */
+    public boolean isShowingDiff() {
+        return mDiff != null;
+    }
+
+    private void applyDiff(LineDiff diff, LineIndex lineIndex) {
+        if(mDiff == null) {
+            mLogicalBeforeDiff = mLogicalLineNumbers;
+        }
+        mDiff = diff;
+        //the diff's lines are numbered, the index adopted with the text keeps track of them
+        mLogicalLineNumbers = true;
+        if(mLineIndex == null) {
+            mLineIndex = new LineIndex();
+        }
+        mCachedLineCount = getMaxLineNumber();
+        mCachedLineCountDigits = LineNumberFormat.digitCount(mCachedLineCount);
+        mCachedLineNumberPadding = getLineNumberPadding(mCachedLineCount);
+        applyLineNumberPadding();
+        invalidateLineNumberLayer();
+        mLoadedLineIndex = lineIndex;
+        mApplyingLoad = true;
+        try {
+            setText(diff.getText());
+        } finally {
+            mApplyingLoad = false;
+            mLoadedLineIndex = null;
+        }
+    }
+
+    //back to plain line numbers, the next gutter update measures the padding again
+    private void endDiff() {
+        mDiff = null;
+        mCachedLineCount = 0;
+        mCachedLineCountDigits = 0;
+        if(!mLogicalBeforeDiff && mLogicalLineNumbers) {
+            //layout lines were numbered before the diff
+            mLogicalLineNumbers = false;
+            if(mLineMarkers == null) {
+                mLineIndex = null;
+                mPendingEdit.clear();
+            }
+            if(mRelativeLineNumbers) {
+                mCaretLine = getCaretLine();
+            }
+            clearLineNumberCache();
+            invalidateLineNumberLayer();
+        }
+    }
+
+    /**
+     * Cancel the running {@link #loadText(CharSequence, Executor)}, if any
+     */
+    public void cancelTextLoad() {
+        mLoadGeneration++;
+    }
+
+    //Measuring the start of the text fills the text layout cache the UI thread lays out from
+    private void warmUpTextLayout(TextPaint paint, CharSequence text, int generation) {
+        int end = Math.min(text.length(), WARM_UP_TEXT_LENGTH);
+        int lineStart = 0;
+        for(int i = 0; i < end && generation == mLoadGeneration; i++) {
+            if(text.charAt(i) == '\n') {
+                paint.measureText(text, lineStart, i);
+                lineStart = i + 1;
+            }
+        }
+    }
+
+    private void applyLoadedText(CharSequence text, LineIndex lineIndex, int maxLineNumber, int padding) {
+        if(mDiff != null) {
+            endDiff();
+        }
+        //pad for the new text before setting it so it is only laid out once
+        mCachedLineCount = mLineNumberOffset + lineIndex.getLineCount();
+        mCachedLineCountDigits = LineNumberFormat.digitCount(mCachedLineCount);
+        if(maxLineNumber == mCachedLineCount) {
+            mCachedLineNumberPadding = padding;
+        } else {
+            //the offset changed while loading
+            mCachedLineNumberPadding = getLineNumberPadding(mCachedLineCount);
+        }
+        applyLineNumberPadding();
+        invalidateLineNumberLayer();
+        mLoadedLineIndex = lineIndex;
+        mApplyingLoad = true;
+        try {
+            setText(text);
+        } finally {
+            mApplyingLoad = false;
+            mLoadedLineIndex = null;
+        }
+    }
+
+    @Override
+    public boolean isPaddingOffsetRequired() {
+        return true;
+    }
+
+    @Override
+    public void setPadding(int left, int top, int right, int bottom) {
+        super.setPadding(left, top, right, bottom);
+        boolean fixPadding = mLeftPadding != left || mRightPadding != right;
+        mLeftPadding = left;
+        mRightPadding = right;
+        if(fixPadding) {
+            fixLineNumberPadding();
+        }
+    }
+
+    /**
+     * Change how line numbers are laid out
+     * @param layoutLineNumbersOnLeft if line numbers should be placed in the left column
+     */
+    public void layoutLineNumbersOnLeft(boolean layoutLineNumbersOnLeft) {
+        boolean oldLayoutDirection = mLayoutOnLeft;
+        mLayoutOnLeft = layoutLineNumbersOnLeft;
+        if(oldLayoutDirection != mLayoutOnLeft) {
+            //controllers format for the column
+            clearLineNumberCache();
+            fixLineNumberPadding();
+        }
+    }
+
+    /*
+     * @return if line numbers should be placed in the left column
+     */
+    public boolean layoutLineNumbersOnLeft() {
+        return mLayoutOnLeft;
+    }
+
+    /**
+     * Number source lines (separated by '\n') instead of layout lines, so wrapped lines only get a number on
+     * their first row
+     * @param logicalLineNumbers if source lines should be numbered
+     */
+    public void useLogicalLineNumbers(boolean logicalLineNumbers) {
+        //asked for while a diff is shown, it stays after the diff ends
+        mLogicalBeforeDiff = logicalLineNumbers;
+        if(logicalLineNumbers == mLogicalLineNumbers) {
+            return;
+        }
+        mLogicalLineNumbers = logicalLineNumbers;
+        if(logicalLineNumbers) {
+            ensureLineIndex();
+        } else {
+            //diffs number source lines
+            mDiff = null;
+            if(mLineMarkers == null) {
+                mLineIndex = null;
+                mPendingEdit.clear();
+            }
+        }
+        if(mRelativeLineNumbers) {
+            mCaretLine = getCaretLine();
+        }
+        //the same line numbers belong to other lines now
+        clearLineNumberCache();
+        fixLineNumberPadding();
+    }
+
+    /**
+     * @return if source lines are numbered instead of layout lines
+     */
+    public boolean useLogicalLineNumbers() {
+        return mLogicalLineNumbers;
+    }
+
+    /**
+     * Number lines by their distance from the caret's line, the caret's line keeps its absolute number. Only moving
+     * the caret to another line redraws the line numbers. The controller is handed the relative numbers.
+     * @param relativeLineNumbers
+     */
+    public void useRelativeLineNumbers(boolean relativeLineNumbers) {
+        if(relativeLineNumbers != mRelativeLineNumbers) {
+            mRelativeLineNumbers = relativeLineNumbers;
+            mCaretLine = relativeLineNumbers ? getCaretLine() : 0;
+            invalidateLineNumberLayer();
+            invalidateGutter();
+        }
+    }
+
+    /**
+     * @return if lines are numbered by their distance from the caret's line
+     */
+    public boolean useRelativeLineNumbers() {
+        return mRelativeLineNumbers;
+    }
+
+    /**
+     * Set the markers of a source line, see {@link #setLineMarkerDrawable(int, Drawable)}. Markers move with their line
+     * as text is edited, and are removed with it. Setting another text removes every marker, markers set while there
+     * is no text yet are kept for the first one.
+     * @param line source line of the document, starting at 0. That is the text unless only part of a document is
+     *             shown, like {@link LineNumberEditText#setVirtualizedText(CharSequence)} or
+     *             {@link LineNumberEditText#foldLines(int, int)}.
+     * @param markers marker flags, 0 removes every marker
+     */
+    public void setLineMarkers(int line, int markers) {
+        if(obtainLineMarkers().set(line, markers)) {
+            onLineMarkersChanged();
+        }
+    }
+
+    /**
+     * @param line source line of the document, starting at 0
+     * @return marker flags of line, 0 if there are none
+     */
+    public int getLineMarkers(int line) {
+        return mLineMarkers != null ? mLineMarkers.get(line) : 0;
+    }
+
+    /**
+     * Add a marker to many source lines at once
+     * @param lines source lines of the document, starting at 0, in any order
+     * @param count number of lines to use from lines
+     * @param marker marker flag to add
+     */
+    public void addLineMarkers(int[] lines, int count, int marker) {
+        obtainLineMarkers().addAll(lines, count, marker);
+        onLineMarkersChanged();
+    }
+
+    /**
+     * Remove a marker from every line
+     * @param marker marker flags to remove
+     */
+    public void clearLineMarkers(int marker) {
+        if(mLineMarkers != null && mLineMarkers.clear(marker)) {
+            onLineMarkersChanged();
+        }
+    }
+
+    /**
+     * Remove every marker
+     */
+    public void clearLineMarkers() {
+        if(mLineMarkers != null && mLineMarkers.size() > 0) {
+            mLineMarkers.clear();
+            onLineMarkersChanged();
+        }
+    }
+
+    /**
+     * Set what a marker looks like, it is drawn behind the line number across the gutter
+     * @param marker a single marker flag
+     * @param drawable drawable for the marker, null to not draw it
+     */
+    public void setLineMarkerDrawable(int marker, Drawable drawable) {
+        if(Integer.bitCount(marker) != 1) {
+            throw new IllegalArgumentException("marker must be a single flag " + marker);
+        }
+        if(mLineMarkerDrawables == null) {
+            mLineMarkerDrawables = new Drawable[Integer.SIZE];
+        }
+        mLineMarkerDrawables[Integer.numberOfTrailingZeros(marker)] = drawable;
+        onLineMarkersChanged();
+    }
+
+    private LineMarkers obtainLineMarkers() {
+        if(mLineMarkers == null) {
+            //markers follow source lines, which needs the index even for layout line numbers
+            ensureLineIndex();
+            applyPendingEdit();
+            mLineMarkers = new LineMarkers();
+        }
+        return mLineMarkers;
+    }
+
+    private void onLineMarkersChanged() {
+        invalidateLineNumberLayer();
+        invalidateGutter();
+    }
+
+    private void ensureLineIndex() {
+        if(mLineIndex == null) {
+            mLineIndex = new LineIndex();
+            mLineIndex.reset(getText());
+            mPendingEdit.clear();
+        }
+    }
+
+    /**
+     * Offset every line number, for text that is part of a larger document
+     * @param offset number of lines before the first line of the text
+     */
+    public void setLineNumberOffset(int offset) {
+        if(offset != mLineNumberOffset) {
+            mLineNumberOffset = offset;
+            fixLineNumberPadding();
+        }
+    }
+
+    /**
+     * @return number of lines before the first line of the text
+     */
+    public int getLineNumberOffset() {
+        return mLineNumberOffset;
+    }
+
+    /**
+     * Change the controller used to display line numbers
+     * @param controller
+     */
+    public void setLineNumberController(Controller controller) {
+        if(controller == null) {
+            throw new IllegalStateException("controller must not be null");
+        }
+        setController(controller);
+        //the new controller can format wider line numbers
+        fixLineNumberPadding();
+    }
+
+    private void setController(Controller controller) {
+        invalidateLineNumberLayer();
+        clearLineNumberCache();
+        mController = controller;
+        mBufferController = controller instanceof BufferController ? (BufferController) controller : null;
+    }
+
+    /**
+     * Cache what the controller returns for the line numbers drawn last, for controllers too expensive to call for
+     * every visible line every frame. The cache is cleared when the controller or the line number style changes,
+     * {@link #invalidateLineNumbers(int, int)} forgets the line numbers it redraws. Relative line numbers aren't
+     * cached.
+     * @param maxSize line numbers to keep, 0 to stop caching
+     * @param followEdits set if the controller's output belongs to the line of text rather than its number (like
+     *                    blame data): edits move entries along with their line and only the edited lines are asked
+     *                    for again. Otherwise edits keep every entry.
+     */
+    public void setLineNumberCache(int maxSize, boolean followEdits) {
+        applyPendingEdit();
+        mLineNumberCache = maxSize > 0 ? new LineNumberCache(maxSize, followEdits) : null;
+        fixLineNumberPadding();
+    }
+
+    /**
+     * @return line numbers drawn from the cache, see {@link #setLineNumberCache(int, boolean)}
+     */
+    public long getLineNumberCacheHits() {
+        return mLineNumberCache != null ? mLineNumberCache.getHits() : 0;
+    }
+
+    /**
+     * @return line numbers the controller was asked for because they weren't cached
+     */
+    public long getLineNumberCacheMisses() {
+        return mLineNumberCache != null ? mLineNumberCache.getMisses() : 0;
+    }
+
+    /**
+     * @return get the controller used to display line numbers
+     */
+    public Controller getLineNumberController() {
+        return mController;
+    }
+
+    /**
+     * Change how line numbers are drawn
+     * @param renderMode {@link #RENDER_MODE_TEXT}, {@link #RENDER_MODE_ATLAS} or {@link #RENDER_MODE_BATCHED}
+     */
+    public void setLineNumberRenderMode(int renderMode) {
+        if(renderMode != RENDER_MODE_TEXT && renderMode != RENDER_MODE_ATLAS && renderMode != RENDER_MODE_BATCHED) {
+            throw new IllegalArgumentException("unknown render mode " + renderMode);
+        }
+        if(renderMode != mRenderMode) {
+            mRenderMode = renderMode;
+            if(renderMode != RENDER_MODE_ATLAS && !mStyle.isShared()) {
+                mStyle.releaseAtlases();
+            }
+            if(renderMode == RENDER_MODE_BATCHED && mLineNumberBatch == null) {
+                mLineNumberBatch = mStyle.getBatch();
+            }
+            invalidateLineNumberLayer();
+            invalidateGutter();
+        }
+    }
+
+    /**
+     * @return how line numbers are drawn
+     */
+    public int getLineNumberRenderMode() {
+        return mRenderMode;
+    }
+
+    /**
+     * Cache the visible line numbers in a bitmap, frames that don't change them (caret blinks, edits that keep the
+     * line count) reuse it and scrolling only draws the rows that scrolled into view. Not used while line numbers
+     * hug the line.
+     * @param enabled if the line number layer should be used
+     */
+    public void setLineNumberLayerEnabled(boolean enabled) {
+        if(enabled == (mLineNumberLayer != null)) {
+            return;
+        }
+        if(enabled) {
+            mLineNumberLayer = new GutterLayer();
+            mLineNumberLayerRenderer = new GutterLayer.Renderer() {
+                @Override
+                public void drawLineNumbers(Canvas canvas, int top, int bottom) {
+                    Layout layout = getLayout();
+                    //layout coordinates are offset from view coordinates by the padding and gravity
+                    int offset = getBaseline() - layout.getLineBaseline(0);
+                    LineNumberTextView.this.drawLineNumbers(canvas, layout,
+                            LineNumberGutter.getLineForVertical(mLayoutMetrics, top - offset),
+                            LineNumberGutter.getLineForVertical(mLayoutMetrics, bottom - offset));
+                }
+            };
+        } else {
+            mLineNumberLayer.release();
+            mLineNumberLayer = null;
+            mLineNumberLayerRenderer = null;
+        }
+        invalidateGutter();
+    }
+
+    /**
+     * @return if the visible line numbers are cached in a bitmap between frames
+     */
+    public boolean isLineNumberLayerEnabled() {
+        return mLineNumberLayer != null;
+    }
+
+    /**
+     * @return fraction of frames drawn since the line number layer was enabled that reused it
+     */
+    public float getLineNumberLayerHitRate() {
+        return mLineNumberLayer != null ? mLineNumberLayer.getHitRate() : 0;
+    }
+
+    private void invalidateLineNumberLayer() {
+        mLineNumberLayerGeneration++;
+    }
+
+    /**
+     * Collect {@link LineNumberMetrics} about line number drawing and padding work. Nothing is recorded (or timed)
+     * while metrics are disabled.
+     * @param enabled if metrics should be collected
+     */
+    public void setLineNumberMetricsEnabled(boolean enabled) {
+        if(enabled && mMetrics == null) {
+            mMetrics = new LineNumberMetrics();
+        } else if(!enabled) {
+            mMetrics = null;
+            mMetricsListener = null;
+        }
+    }
+
+    /**
+     * @return the metrics collected so far, or null if metrics are disabled
+     */
+    public LineNumberMetrics getLineNumberMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Get notified with the metrics of every frame, setting a listener enables metrics
+     * @param listener listener to notify, or null to stop notifying
+     */
+    public void setLineNumberMetricsListener(MetricsListener listener) {
+        if(listener != null) {
+            setLineNumberMetricsEnabled(true);
+        }
+        mMetricsListener = listener;
+    }
+
+    /**
+     * @return if line numbers are hugging the line or in the left or right column
+     */
+    public boolean doLineNumbersHugLine() {
+        return mHugLine;
+    }
+
+    /**
+     * Set if line numbers hug the line or are in the left or right column
+     * @param hugLine
+     */
+    public void doLineNumbersHugLine(boolean hugLine) {
+        boolean doInvalidate = hugLine != mHugLine;
+        mHugLine = hugLine;
+        if(doInvalidate) {
+            //edits weren't tracked while not hugging
+            mLayoutMetrics.invalidateExtents();
+            //hugging line numbers move into the text, the whole view is redrawn
+            invalidateLineNumberLayer();
+            invalidate();
+        }
+    }
+
+    /**
+     * Change line number color
+     * @param color
+     */
+    public void setLineNumberColor(int color) {
+        if(color != mTextPaint.getColor()) {
+            editStyle().setColor(color);
+            mStyleVersion = mStyle.getVersion();
+            invalidateLineNumberLayer();
+            invalidateGutter();
+        }
+    }
+
+    /**
+     * Change line number typeface
+     * @param typeface
+     */
+    public void setLineNumberTypeface(Typeface typeface) {
+        if(typeface != mTextPaint.getTypeface()) {
+            editStyle().setTypeface(typeface);
+            mStyleVersion = mStyle.getVersion();
+            clearLineNumberCache();
+            fixLineNumberPadding();
+        }
+    }
+
+    /**
+     * Change line number size (in px, uses {@see android.graphics.Paint#setTextSize(int)})
+     * @param size
+     */
+    public void setLineNumberSize(int size) {
+        if(size != mTextPaint.getTextSize()) {
+            editStyle().setTextSize(size);
+            mStyleVersion = mStyle.getVersion();
+            clearLineNumberCache();
+            fixLineNumberPadding();
+        }
+    }
+
+    /**
+     * @return the default controller used to display line numbers
+     */
+    protected Controller getDefaultLineNumberController() {
+        return DEFAULT_CONTROLLER;
+    }
+
+    /**
+     * Share the line number paint, char widths, glyph atlas and buffers with other views, see
+     * {@link LineNumberStyle}
+     * @param style style to draw line numbers with
+     */
+    public void setLineNumberStyle(LineNumberStyle style) {
+        if(style != mStyle) {
+            style.setShared();
+            applyStyle(style);
+            fixLineNumberPadding();
+        }
+    }
+
+    /**
+     * @return the style line numbers are drawn with, possibly shared with other views it was set on. A view that was
+     * never given a style gets its own copy of the default one here, so changing it only changes this view.
+     */
+    public LineNumberStyle getLineNumberStyle() {
+        if(mStyle.isDefault()) {
+            applyStyle(new LineNumberStyle(mStyle));
+        }
+        return mStyle;
+    }
+
+    private void applyStyle(LineNumberStyle style) {
+        mStyle = style;
+        mStyleVersion = style.getVersion();
+        mTextPaint = style.getPaint();
+        mLineNumberWidths = style.getWidths();
+        mLineNumberBuffer = style.getBuffer();
+        mLineNumberBatch = mRenderMode == RENDER_MODE_BATCHED ? style.getBatch() : null;
+        //cached widths were measured with the old style
+        clearLineNumberCache();
+        invalidateLineNumberLayer();
+    }
+
+    //copy a shared style before this view changes it
+    private LineNumberStyle editStyle() {
+        if(mStyle.isShared()) {
+            applyStyle(new LineNumberStyle(mStyle));
+        }
+        return mStyle;
+    }
+
+    //someone else changed the shared style since the last frame
+    private void checkStyleVersion() {
+        if(mStyleVersion != mStyle.getVersion()) {
+            mStyleVersion = mStyle.getVersion();
+            clearLineNumberCache();
+            invalidateLineNumberLayer();
+            //measuring can change the padding, which shouldn't happen in the middle of drawing
+            postOnFrame(new Runnable() {
+                @Override
+                public void run() {
+                    fixLineNumberPadding();
+                }
+            });
+        }
+    }
+
+    /**
+     * Show another text in a recycled view, with its own first line number. The gutter is updated once, and only
+     * measured again if the largest line number has a different number of digits. Line markers are cleared.
+     * @param text text to show
+     * @param firstLineNumber line number of the first line
+     */
+    public void bindLineNumbers(CharSequence text, int firstLineNumber) {
+        beginGutterBatch();
+        try {
+            if(firstLineNumber - 1 != mLineNumberOffset) {
+                mLineNumberOffset = firstLineNumber - 1;
+                invalidateLineNumberLayer();
+            }
+            setText(text);
+            if(mLineMarkers != null) {
+                mLineMarkers.clear();
+            }
+        } finally {
+            endGutterBatch();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if(!mStyle.isShared()) {
+            mStyle.releaseAtlases();
+        }
+        if(mLineNumberLayer != null) {
+            mLineNumberLayer.release();
+        }
+    }
+
+    /**
+     * Setup a slightly modified version of the clipping bounds {@see android.widget.TextView} uses
+     * @param canvas
+     */
+    private void textViewClip(Canvas canvas) {
+        int scrollX = getScrollX(), scrollY = getScrollY();
+        int layoutHeight = getLayout().getHeight();
+        if(!mClipValid || scrollX != mClipScrollX || scrollY != mClipScrollY || layoutHeight != mClipLayoutHeight) {
+            int left = getLeft(), right = getRight(),
+                    top = getTop(), bottom = getBottom();
+            int maxScrollY = layoutHeight - bottom - top - getCompoundPaddingBottom() - getCompoundPaddingTop();
+
+            //ignore left and right padding
+            mClipLeft = scrollX;
+            mClipTop = (scrollY == 0) ? 0 : getExtendedPaddingTop() + scrollY;
+            mClipRight = right - left + scrollX;
+            mClipBottom = bottom - top + scrollY -
+                    ((scrollY == maxScrollY) ? 0 : getExtendedPaddingBottom());
+            mClipValid = true;
+            mClipScrollX = scrollX;
+            mClipScrollY = scrollY;
+            mClipLayoutHeight = layoutHeight;
+        }
+        float clipLeft = mClipLeft, clipTop = mClipTop, clipRight = mClipRight, clipBottom = mClipBottom;
+
+        //account for shadow if it exists
+        if(Build.VERSION.SDK_INT > Build.VERSION_CODES.JELLY_BEAN) {
+            float shadowRadius = getShadowRadius();
+            if (shadowRadius != 0) {
+                float shadowDx = getShadowDx(), shadowDy = getShadowDy();
+                clipLeft += Math.min(0, shadowDx - shadowRadius);
+                clipRight += Math.max(0, shadowDx + shadowRadius);
+
+                clipTop += Math.min(0, shadowDy - shadowRadius);
+                clipBottom += Math.max(0, shadowDy + shadowRadius);
+            }
+        }
+
+        canvas.clipRect(clipLeft, clipTop, clipRight, clipBottom);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        long startTime = mMetrics != null ? System.nanoTime() : 0;
+        canvas.save();
+        textViewClip(canvas);
+
+        Layout layout = getLayout();
+        mLayoutMetrics.setLayout(layout);
+        checkStyleVersion();
+
+        int scrollY = getScrollY();
+        //the layer draws the rows it needs from the same cached baselines
+        updateVisibleLines(layout, scrollY);
+        if(mLineNumberLayer != null && !mHugLine) {
+            //line numbers are drawn from getBaseline(), which padding and gravity move
+            int layoutTop = getBaseline() - layout.getLineBaseline(0);
+            mLineNumberLayer.draw(canvas, layout, layoutTop, getGutterLeft(), getGutterRight(), scrollY, getHeight(),
+                    mLineNumberLayerGeneration, mLineNumberLayerRenderer);
+        } else {
+            //only display all the line numbers between the first and last line
+            drawLineNumbers(canvas, layout, mVisibleLines.getFirstLine(), mVisibleLines.getLastLine());
+        }
+        canvas.restore();
+        if(mFastScroller != null) {
+            float fraction = getScrollFraction();
+            if(fraction >= 0) {
+                //the label only looks up the line at the top, nothing is laid out
+                String label = mFastScroller.isDragging()
+                        ? mController.getLineNumberText(mLayoutOnLeft, getLineNumberAtScrollY()) : null;
+                mFastScroller.draw(canvas, getScrollX(), getScrollY(), getWidth(), getHeight(), fraction, label,
+                        mTextPaint);
+            }
+        }
+        if(mMetrics != null) {
+            mMetrics.addDrawNanos(System.nanoTime() - startTime);
+            mMetrics.endFrame();
+            if(mMetricsListener != null) {
+                mMetricsListener.onLineNumberFrame(mMetrics);
+            }
+        }
+    }
+
+    //walk the visible lines of the last frame to this one, unless the layout changed
+    private void updateVisibleLines(Layout layout, int scrollY) {
+        if(layout != mVisibleLinesLayout || layout.getHeight() != mVisibleLinesLayoutHeight
+                || layout.getLineCount() != mVisibleLinesLayoutLineCount) {
+            mVisibleLines.invalidate();
+            mVisibleLinesLayout = layout;
+            mVisibleLinesLayoutHeight = layout.getHeight();
+            mVisibleLinesLayoutLineCount = layout.getLineCount();
+        }
+        mVisibleLines.update(mLayoutMetrics, scrollY,
+                scrollY + (getHeight() - getExtendedPaddingTop() - getExtendedPaddingBottom()));
+    }
+
+    /**
+     * @return first layout line drawn in the last frame
+     */
+    int getFirstVisibleLine() {
+        return mVisibleLines.getFirstLine();
+    }
+
+    /**
+     * @return last layout line drawn in the last frame
+     */
+    int getLastVisibleLine() {
+        return mVisibleLines.getLastLine();
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        super.onLayout(changed, left, top, right, bottom);
+        //size, padding or layout changes all end up here
+        mClipValid = false;
+        mVisibleLines.invalidate();
+        //so do reflows that kept the layout and its line count
+        mLayoutMetrics.invalidateExtents();
+    }
+
+    private int getLineBaseline(Layout layout, int line) {
+        return mVisibleLines.contains(line) ? mVisibleLines.getBaseline(line) : layout.getLineBaseline(line);
+    }
+
+    private void drawLineNumbers(Canvas canvas, Layout layout, int firstLine, int lastLine) {
+        GlyphAtlas atlas = getLineNumberAtlas();
+        if(mLineMarkers != null && mLineMarkers.size() > 0 && mLineMarkerDrawables != null) {
+            drawLineMarkers(canvas, layout, firstLine, lastLine);
+        }
+
+        //the y position starts at the baseline of the first line
+        int baseline = getLineBaseline(layout, firstLine);
+        int positionY = getBaseline() + (baseline - layout.getLineBaseline(0));
+        if(mLogicalLineNumbers) {
+            //one lookup for the first line, after that the source line only goes up when a new one starts
+            //a batch can still be open while drawing
+            applyPendingEdit();
+            CharSequence text = layout.getText();
+            int sourceLine = mLineIndex.getLineForOffset(layout.getLineStart(firstLine));
+            if(isSourceLineStart(layout, text, firstLine)) {
+                drawSourceLineNumber(canvas, atlas, layout, positionY, firstLine, sourceLine);
+            }
+            for(int i = firstLine + 1; i <= lastLine; i++) {
+                int nextBaseline = getLineBaseline(layout, i);
+                positionY += nextBaseline - baseline;
+                baseline = nextBaseline;
+                //wrapped continuation lines stay blank
+                if(isSourceLineStart(layout, text, i)) {
+                    drawSourceLineNumber(canvas, atlas, layout, positionY, i, ++sourceLine);
+                }
+            }
+        } else {
+            drawLineNumber(canvas, atlas, layout, positionY, firstLine, mLineNumberOffset + firstLine + 1);
+            for(int i = firstLine + 1; i <= lastLine; i++) {
+                //get the next y position using the difference between the current and last baseline
+                int nextBaseline = getLineBaseline(layout, i);
+                positionY += nextBaseline - baseline;
+                baseline = nextBaseline;
+                drawLineNumber(canvas, atlas, layout, positionY, i, mLineNumberOffset + i + 1);
+            }
+        }
+        if(mRenderMode == RENDER_MODE_BATCHED) {
+            mLineNumberBatch.draw(canvas, mTextPaint);
+        }
+    }
+
+    //one range query for the markers of the visible source lines, each is drawn on the first layout line of its line
+    private void drawLineMarkers(Canvas canvas, Layout layout, int firstLine, int lastLine) {
+        applyPendingEdit();
+        //markers are kept in document lines
+        int documentOffset = getDocumentLineOffset();
+        int firstDocumentLine = documentOffset
+                + getNumberedLine(mLineIndex.getLineForOffset(layout.getLineStart(firstLine)));
+        int lastDocumentLine = documentOffset
+                + getNumberedLine(mLineIndex.getLineForOffset(layout.getLineStart(lastLine)));
+        //layout coordinates to view coordinates, same as the line number baselines
+        int offsetY = getBaseline() - layout.getLineBaseline(0);
+        int left = getGutterLeft(), right = getGutterRight();
+        for(int i = mLineMarkers.lowerBound(firstDocumentLine), size = mLineMarkers.size(); i < size; i++) {
+            int documentLine = mLineMarkers.getLine(i);
+            if(documentLine > lastDocumentLine) {
+                break;
+            }
+            int line = getLineForNumberedLine(documentLine - documentOffset);
+            if(getNumberedLine(line) != documentLine - documentOffset) {
+                //folded away
+                continue;
+            }
+            int layoutLine = layout.getLineForOffset(mLineIndex.getLineStart(line));
+            int top = layout.getLineTop(layoutLine) + offsetY;
+            int bottom = layout.getLineBottom(layoutLine) + offsetY;
+            for(int markers = mLineMarkers.getMarkers(i); markers != 0; markers &= markers - 1) {
+                Drawable drawable = mLineMarkerDrawables[Integer.numberOfTrailingZeros(markers)];
+                if(drawable != null) {
+                    drawable.setBounds(left, top, right, bottom);
+                    drawable.draw(canvas);
+                }
+            }
+        }
+    }
+
+    private static boolean isSourceLineStart(Layout layout, CharSequence text, int line) {
+        int start = layout.getLineStart(line);
+        return start == 0 || text.charAt(start - 1) == '\n';
+    }
+
+    //the atlas to draw with this frame, or null if line numbers are drawn as text
+    private GlyphAtlas getLineNumberAtlas() {
+        if(mRenderMode == RENDER_MODE_ATLAS && mDiff != null) {
+            //diff columns are plain decimals whatever the controller
+            return mStyle.getAtlas(null);
+        }
+        if(mRenderMode != RENDER_MODE_ATLAS || mBufferController == null) {
+            return null;
+        }
+        String glyphs = mController instanceof GlyphController ? ((GlyphController) mController).getLineNumberGlyphs() : null;
+        //views sharing the style with other controllers get their own atlas
+        return mStyle.getAtlas(glyphs);
+    }
+
+    private void drawSourceLineNumber(Canvas canvas, GlyphAtlas atlas, Layout layout, int positionY, int line,
+                                      int sourceLine) {
+        if(mDiff != null) {
+            drawDiffLineNumbers(canvas, atlas, positionY, line, sourceLine);
+        } else {
+            drawLineNumber(canvas, atlas, layout, positionY, line, mLineNumberOffset + getNumberedLine(sourceLine) + 1);
+        }
+    }
+
+    //old and new line number straight from the diff's arrays, blank if the line isn't in that text
+    private void drawDiffLineNumbers(Canvas canvas, GlyphAtlas atlas, int positionY, int line, int sourceLine) {
+        if(mMetrics != null) {
+            mMetrics.lineNumberDrawn();
+        }
+        int positionX = getLineNumberX(line);
+        int oldLine = mDiff.getOldLine(sourceLine), newLine = mDiff.getNewLine(sourceLine);
+        if(oldLine >= 0) {
+            int length = LineNumberFormat.formatDecimal(oldLine + 1, mLineNumberBuffer, 0);
+            drawLineNumberText(canvas, atlas, mLineNumberBuffer, length, positionX, positionY);
+        }
+        if(newLine >= 0) {
+            int length = LineNumberFormat.formatDecimal(newLine + 1, mLineNumberBuffer, 0);
+            drawLineNumberText(canvas, atlas, mLineNumberBuffer, length, positionX + mDiffNewColumnX, positionY);
+        }
+    }
+
+    private void drawLineNumber(Canvas canvas, GlyphAtlas atlas, Layout layout, int positionY, int line, int lineNumber) {
+        if(mRelativeLineNumbers) {
+            //distance from the caret's line, which shows its own number
+            int caretLineNumber = mLineNumberOffset + (mLogicalLineNumbers ? getNumberedLine(mCaretLine) : mCaretLine) + 1;
+            if(lineNumber != caretLineNumber) {
+                lineNumber = Math.abs(lineNumber - caretLineNumber);
+            }
+        }
+        if(mLineNumberCache != null && !mRelativeLineNumbers) {
+            drawCachedLineNumber(canvas, atlas, positionY, line, lineNumber);
+            return;
+        }
+        if (mController.showLineNumber(lineNumber)) {
+            if(mMetrics != null) {
+                mMetrics.lineNumberDrawn();
+            }
+            int positionX = getLineNumberX(line);
+            if(mBufferController != null) {
+                int length = mBufferController.getLineNumberText(mLayoutOnLeft, lineNumber, mLineNumberBuffer);
+                drawLineNumberText(canvas, atlas, mLineNumberBuffer, length, positionX, positionY);
+            } else {
+                canvas.drawText(mController.getLineNumberText(mLayoutOnLeft, lineNumber), positionX, positionY, mTextPaint);
+            }
+        } else if(mMetrics != null) {
+            mMetrics.lineNumberSkipped();
+        }
+    }
+
+    private void drawCachedLineNumber(Canvas canvas, GlyphAtlas atlas, int positionY, int line, int lineNumber) {
+        int slot = mLineNumberCache.get(mController, mLayoutOnLeft, lineNumber, mLineNumberBuffer,
+                mLineNumberWidths.getMeasurer());
+        if(mLineNumberCache.isShown(slot)) {
+            if(mMetrics != null) {
+                mMetrics.lineNumberDrawn();
+            }
+            drawLineNumberText(canvas, atlas, mLineNumberCache.getText(slot), mLineNumberCache.getLength(slot),
+                    getLineNumberX(line), positionY);
+        } else if(mMetrics != null) {
+            mMetrics.lineNumberSkipped();
+        }
+    }
+
+    private void drawLineNumberText(Canvas canvas, GlyphAtlas atlas, char[] text, int length, int positionX,
+                                    int positionY) {
+        if(mRenderMode == RENDER_MODE_BATCHED) {
+            mLineNumberBatch.add(mLineNumberWidths, text, length, positionX, positionY);
+        } else if(atlas != null && atlas.canDraw(text, length)) {
+            atlas.draw(canvas, text, length, positionX, positionY);
+        } else {
+            canvas.drawText(text, 0, length, positionX, positionY, mTextPaint);
+        }
+    }
+
+    //left edge of the column line numbers are drawn in
+    private int getGutterLeft() {
+        return mLayoutOnLeft ? getLeftPaddingOffset() : getWidth() - getCompoundPaddingRight();
+    }
+
+    //right edge of the column line numbers are drawn in
+    private int getGutterRight() {
+        //getRightPaddingOffset() returns a - number
+        return mLayoutOnLeft ? getCompoundPaddingLeft() : getWidth() + getRightPaddingOffset();
+    }
+
+    //Whenever the padding changes (or is set up for the first time) we need to add enough padding to the correct side to show our line numbers
+    private void fixLineNumberPadding() {
+        long startTime = mMetrics != null ? System.nanoTime() : 0;
+        mCachedLineCount = getMaxLineNumber();
+        mCachedLineCountDigits = LineNumberFormat.digitCount(mCachedLineCount);
+        mCachedLineNumberPadding = getLineNumberPadding(mCachedLineCount);
+        invalidateLineNumberLayer();
+        if(!applyLineNumberPadding()) {
+            //same width, only the line numbers need to be drawn again
+            invalidateGutter();
+        }
+        if(mMetrics != null) {
+            mMetrics.addPaddingNanos(System.nanoTime() - startTime);
+        }
+    }
+
+    //When the text changes only touch the padding (which requests a layout) if the gutter actually changes width
+    private void updateLineNumberPadding() {
+        int lineCount = getMaxLineNumber();
+        if(lineCount == mCachedLineCount) {
+            return;
+        }
+        int digits = LineNumberFormat.digitCount(lineCount);
+        boolean digitsChanged = digits != mCachedLineCountDigits;
+        mCachedLineCount = lineCount;
+        mCachedLineCountDigits = digits;
+        //a decimal controller's width only depends on how many digits there are
+        if(!digitsChanged && mController instanceof DecimalLineNumberController
+                && ((DecimalLineNumberController) mController).isDecimal()) {
+            return;
+        }
+        long startTime = mMetrics != null ? System.nanoTime() : 0;
+        int padding = getLineNumberPadding(lineCount);
+        if(padding != mCachedLineNumberPadding) {
+            mCachedLineNumberPadding = padding;
+            applyLineNumberPadding();
+        }
+        if(mMetrics != null) {
+            mMetrics.addPaddingNanos(System.nanoTime() - startTime);
+        }
+    }
+
+    //setPadding relayouts and redraws the whole view, so only call it when the padding changes
+    private boolean applyLineNumberPadding() {
+        int left = mLayoutOnLeft ? mLeftPadding + mCachedLineNumberPadding : mLeftPadding;
+        int right = mLayoutOnLeft ? mRightPadding : mRightPadding + mCachedLineNumberPadding;
+        if(left == getPaddingLeft() && right == getPaddingRight()) {
+            return false;
+        }
+        if(mMetrics != null) {
+            mMetrics.relayout();
+        }
+        super.setPadding(left, getPaddingTop(), right, getPaddingBottom());
+        return true;
+    }
+
+    /**
+     * @return the largest line number that can be displayed, the gutter is sized to fit it
+     */
+    protected int getMaxLineNumber() {
+        return mLineNumberOffset + getLineNumberCount();
+    }
+
+    /**
+     * Only called for logical line numbers
+     * @param line source line of the text, starting at 0
+     * @return the line it is numbered as, before the line number offset is added
+     */
+    protected int getNumberedLine(int line) {
+        return line;
+    }
+
+    /**
+     * Inverse of {@link #getNumberedLine(int)}, a line that isn't in the text maps to the line shown in its place
+     * @param numberedLine line as numbered, before the line number offset is added
+     * @return source line of the text
+     */
+    protected int getLineForNumberedLine(int numberedLine) {
+        return numberedLine;
+    }
+
+    private int getLineNumberCount() {
+        if(mLogicalLineNumbers) {
+            applyPendingEdit();
+            return mLineIndex.getLineCount();
+        }
+        Layout layout = getLayout();
+        return layout != null ? layout.getLineCount() : 1;
+    }
+
+    //the line number padding is the width of the controller's template, or of the largest line number text without one
+    private int getLineNumberPadding(int lineCount) {
+        if(mDiff != null) {
+            return getDiffPadding();
+        }
+        if(mLineNumberCache != null && !(mController instanceof LineNumberTemplateController)) {
+            //the largest line number's width, cached for when it is drawn
+            int slot = mLineNumberCache.get(mController, mLayoutOnLeft, lineCount, mLineNumberBuffer,
+                    mLineNumberWidths.getMeasurer());
+            if(mLineNumberCache.isShown(slot)) {
+                //rounded like LineNumberGutter.getLineNumberWidth, caching mustn't change the gutter width
+                return (int) mLineNumberCache.getWidth(slot);
+            }
+        }
+        if(mMetrics != null) {
+            long startTime = System.nanoTime();
+            int padding = LineNumberGutter.getLineNumberWidth(mController, mLayoutOnLeft, lineCount, mLineNumberBuffer, mLineNumberWidths);
+            mMetrics.addMeasureNanos(System.nanoTime() - startTime);
+            return padding;
+        }
+        return LineNumberGutter.getLineNumberWidth(mController, mLayoutOnLeft, lineCount, mLineNumberBuffer, mLineNumberWidths);
+    }
+
+    //old and new line numbers side by side, a digit apart
+    private int getDiffPadding() {
+        int gap = (int) Math.ceil(mLineNumberWidths.getWidestDigit());
+        mDiffNewColumnX = mLineNumberWidths.getDecimalWidth(LineNumberFormat.digitCount(mDiff.getOldLineCount())) + gap;
+        return mDiffNewColumnX + mLineNumberWidths.getDecimalWidth(LineNumberFormat.digitCount(mDiff.getNewLineCount()));
+    }
+
+    //get the x coordinate of a line number, mLayoutMetrics has to be set to the current layout
+    private int getLineNumberX(int line) {
+        //padding offset ignores the padding we set - we are displaying content inside that padding
+        int leftColumn = getLeftPaddingOffset();
+        //getRightPaddingOffset() returns a - number
+        int rightColumn = getWidth() + getRightPaddingOffset() - mCachedLineNumberPadding;
+        return LineNumberGutter.getLineNumberX(mLayoutMetrics, line, mLayoutOnLeft, mHugLine,
+                leftColumn, rightColumn, mLeftPadding, mRightPadding, getCompoundPaddingLeft());
     }
 }
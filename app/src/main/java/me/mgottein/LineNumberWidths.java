@@ -0,0 +1,75 @@
+package me.mgottein;
+
+import java.util.Arrays;
+
+/**
+ * Char advances of the line number paint, measured once per paint configuration. Gutter widths are computed from
+ * them without measuring text, digits always count as the widest digit so the width only depends on the digit count.
+ */
+class LineNumberWidths {
+    //advances of the ASCII chars, NaN until measured
+    private final float[] mAdvances = new float[128];
+    private final char[] mChar = new char[1];
+    private final TextMeasurer mMeasurer;
+    private float mWidestDigit;
+
+    LineNumberWidths(TextMeasurer measurer) {
+        mMeasurer = measurer;
+        remeasure();
+    }
+
+    /**
+     * Measure the digits again, call whenever the paint changes size or typeface
+     */
+    void remeasure() {
+        Arrays.fill(mAdvances, Float.NaN);
+        mWidestDigit = 0;
+        for(char digit = '0'; digit <= '9'; digit++) {
+            mWidestDigit = Math.max(mWidestDigit, getAdvance(digit));
+        }
+    }
+
+    TextMeasurer getMeasurer() {
+        return mMeasurer;
+    }
+
+    float getWidestDigit() {
+        return mWidestDigit;
+    }
+
+    /**
+     * @return width of a decimal number with digitCount digits
+     */
+    int getDecimalWidth(int digitCount) {
+        return (int) Math.ceil(digitCount * mWidestDigit);
+    }
+
+    /**
+     * @return width of template, see {@link LineNumberTemplateController#getLineNumberTemplate(boolean, int)}
+     */
+    int getTemplateWidth(CharSequence template) {
+        float width = 0;
+        for(int i = 0, length = template.length(); i < length; i++) {
+            char c = template.charAt(i);
+            width += c >= '0' && c <= '9' ? mWidestDigit : getAdvance(c);
+        }
+        return (int) Math.ceil(width);
+    }
+
+    /**
+     * @return advance of c, measured once for ASCII chars
+     */
+    float getAdvance(char c) {
+        if(c < mAdvances.length) {
+            float advance = mAdvances[c];
+            if(Float.isNaN(advance)) {
+                mChar[0] = c;
+                advance = mMeasurer.measureText(mChar, 0, 1);
+                mAdvances[c] = advance;
+            }
+            return advance;
+        }
+        mChar[0] = c;
+        return mMeasurer.measureText(mChar, 0, 1);
+    }
+}
@@ -0,0 +1,247 @@
+package me.mgottein;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * UTF-8 text of a memory mapped file. One sequential pass over the bytes finds the newlines and where every chunk of
+ * chars starts, after that chunks are only decoded when they are read and a bounded number of them is kept, so the
+ * text doesn't have to fit in memory. Malformed bytes read as U+FFFD. Show it with
+ * {@link LineNumberEditText#setVirtualizedText(CharSequence)}, {@link android.widget.TextView#setText(CharSequence)}
+ * copies every char. Not thread safe.
+ */
+public class MappedText implements CharSequence {
+    private static final int CHUNK_CHARS = 16384;
+    private static final int MAX_CACHED_CHUNKS = 64;
+    private static final char REPLACEMENT = '\ufffd';
+
+    private final ByteBuffer mBytes;
+    private final int mLength;
+    //char and byte offset every chunk starts at, chunks start at code point boundaries
+    private int[] mChunkStarts = new int[64];
+    private int[] mChunkByteStarts = new int[64];
+    private int mChunkCount;
+    //char offsets of every '\n'
+    private int[] mNewlines = new int[1024];
+    private int mNewlineCount;
+
+    //least recently read chunk first
+    private final LinkedHashMap<Integer, char[]> mChunks = new LinkedHashMap<Integer, char[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, char[]> eldest) {
+            return size() > MAX_CACHED_CHUNKS;
+        }
+    };
+    //the chunk charAt read last, reading along a chunk skips the map
+    private int mLastChunk = -1;
+    private char[] mLastChars;
+
+    /**
+     * Map a file and index it, this reads the whole file once so it shouldn't run on the UI thread
+     * @throws IOException if the file can't be read or is larger than 2GB
+     */
+    public static MappedText open(File file) throws IOException {
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = input.getChannel();
+            if(channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too large to map");
+            }
+            //the mapping stays valid after the channel is closed
+            return new MappedText(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            input.close();
+        }
+    }
+
+    MappedText(ByteBuffer bytes) {
+        mBytes = bytes;
+        int limit = bytes.limit();
+        int pos = 0, length = 0;
+        addChunk(0, 0);
+        while(pos < limit) {
+            if(length - mChunkStarts[mChunkCount - 1] >= CHUNK_CHARS) {
+                addChunk(length, pos);
+            }
+            int b = bytes.get(pos);
+            if(b >= 0) {
+                //ASCII
+                if(b == '\n') {
+                    addNewline(length);
+                }
+                pos++;
+                length++;
+            } else {
+                int decoded = decode(bytes, pos, limit, null, 0);
+                pos += decoded >> 2;
+                length += decoded & 3;
+            }
+        }
+        mLength = length;
+        //end of the last chunk
+        addChunk(length, limit);
+        mChunkCount--;
+    }
+
+    private void addChunk(int start, int byteStart) {
+        if(mChunkCount == mChunkStarts.length) {
+            mChunkStarts = grow(mChunkStarts);
+            mChunkByteStarts = grow(mChunkByteStarts);
+        }
+        mChunkStarts[mChunkCount] = start;
+        mChunkByteStarts[mChunkCount] = byteStart;
+        mChunkCount++;
+    }
+
+    private void addNewline(int offset) {
+        if(mNewlineCount == mNewlines.length) {
+            mNewlines = grow(mNewlines);
+        }
+        mNewlines[mNewlineCount++] = offset;
+    }
+
+    private static int[] grow(int[] array) {
+        int[] grown = new int[array.length * 2];
+        System.arraycopy(array, 0, grown, 0, array.length);
+        return grown;
+    }
+
+    //decode the code point at pos into dest if it isn't null, returns bytes read << 2 | chars written
+    private static int decode(ByteBuffer bytes, int pos, int limit, char[] dest, int destPos) {
+        int b = bytes.get(pos) & 0xff;
+        int count, codePoint;
+        if(b < 0x80) {
+            count = 0;
+            codePoint = b;
+        } else if(b >= 0xc2 && b <= 0xdf) {
+            count = 1;
+            codePoint = b & 0x1f;
+        } else if(b >= 0xe0 && b <= 0xef) {
+            count = 2;
+            codePoint = b & 0x0f;
+        } else if(b >= 0xf0 && b <= 0xf4) {
+            count = 3;
+            codePoint = b & 0x07;
+        } else {
+            count = -1;
+            codePoint = REPLACEMENT;
+        }
+        for(int i = 1; i <= count; i++) {
+            int next = pos + i < limit ? bytes.get(pos + i) & 0xff : 0;
+            if((next & 0xc0) != 0x80) {
+                //truncated sequence, skip its first byte
+                count = -1;
+                codePoint = REPLACEMENT;
+                break;
+            }
+            codePoint = codePoint << 6 | (next & 0x3f);
+        }
+        int read = Math.max(count, 0) + 1;
+        if(codePoint > 0xffff) {
+            if(codePoint > Character.MAX_CODE_POINT) {
+                codePoint = REPLACEMENT;
+            } else {
+                if(dest != null) {
+                    //Character.highSurrogate and lowSurrogate need API 19
+                    Character.toChars(codePoint, dest, destPos);
+                }
+                return read << 2 | 2;
+            }
+        }
+        if(dest != null) {
+            dest[destPos] = (char) codePoint;
+        }
+        return read << 2 | 1;
+    }
+
+    /**
+     * @return number of source lines, see {@link LineIndex#getLineCount()}
+     */
+    public int getLineCount() {
+        return mNewlineCount + 1;
+    }
+
+    int getNewlineCount() {
+        return mNewlineCount;
+    }
+
+    int getNewline(int index) {
+        return mNewlines[index];
+    }
+
+    @Override
+    public int length() {
+        return mLength;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if(mLastChunk < 0 || index < mChunkStarts[mLastChunk] || index >= mChunkStarts[mLastChunk + 1]) {
+            mLastChunk = getChunkForOffset(index);
+            mLastChars = getChunk(mLastChunk);
+        }
+        return mLastChars[index - mChunkStarts[mLastChunk]];
+    }
+
+    /**
+     * Copy [start, end) into dest at destStart, decoding each chunk once
+     */
+    void getChars(int start, int end, char[] dest, int destStart) {
+        while(start < end) {
+            int chunk = getChunkForOffset(start);
+            int chunkStart = mChunkStarts[chunk];
+            int count = Math.min(end, mChunkStarts[chunk + 1]) - start;
+            System.arraycopy(getChunk(chunk), start - chunkStart, dest, destStart, count);
+            start += count;
+            destStart += count;
+        }
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        char[] chars = new char[end - start];
+        getChars(start, end, chars, 0);
+        return new String(chars);
+    }
+
+    private int getChunkForOffset(int offset) {
+        int low = 0, high = mChunkCount - 1;
+        while(low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if(mChunkStarts[mid] <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private char[] getChunk(int chunk) {
+        char[] chars = mChunks.get(chunk);
+        if(chars == null) {
+            chars = new char[mChunkStarts[chunk + 1] - mChunkStarts[chunk]];
+            int pos = mChunkByteStarts[chunk], limit = mChunkByteStarts[chunk + 1];
+            for(int i = 0; pos < limit; ) {
+                int decoded = decode(mBytes, pos, limit, chars, i);
+                pos += decoded >> 2;
+                i += decoded & 3;
+            }
+            mChunks.put(chunk, chars);
+        }
+        return chars;
+    }
+
+    /**
+     * Decodes the whole file
+     */
+    @Override
+    public String toString() {
+        return subSequence(0, mLength).toString();
+    }
+}
@@ -0,0 +1,153 @@
+package me.mgottein;
+
+/**
+ * Sorted vector of ints with a movable gap, the same trick {@see android.text.DynamicLayout} uses for its line
+ * starts. Values stored after the gap are relative to a shared delta, so shifting every value from an index onwards
+ * is O(1) once the gap has been moved there, and edits close to the last edit only move a few entries. Each value
+ * can carry an int payload that isn't shifted.
+ */
+class OffsetVector {
+    private int[] mValues;
+    //null unless payloads are stored
+    private int[] mPayloads;
+    private int mSize;
+    private int mGapStart;
+    private int mGapLength;
+    //added to every value stored after the gap
+    private int mDelta;
+
+    OffsetVector(int capacity) {
+        this(capacity, false);
+    }
+
+    OffsetVector(int capacity, boolean payloads) {
+        mValues = new int[Math.max(capacity, 1)];
+        mPayloads = payloads ? new int[mValues.length] : null;
+        mGapLength = mValues.length;
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    int get(int index) {
+        return index < mGapStart ? mValues[index] : mValues[index + mGapLength] + mDelta;
+    }
+
+    int getPayload(int index) {
+        return index < mGapStart ? mPayloads[index] : mPayloads[index + mGapLength];
+    }
+
+    void setPayload(int index, int payload) {
+        mPayloads[index < mGapStart ? index : index + mGapLength] = payload;
+    }
+
+    void clear() {
+        mSize = 0;
+        mGapStart = 0;
+        mGapLength = mValues.length;
+        mDelta = 0;
+    }
+
+    /**
+     * @return the first index with a value greater or equal to value, or size() if there is none
+     */
+    int lowerBound(int value) {
+        int low = 0, high = mSize;
+        while(low < high) {
+            int mid = (low + high) >>> 1;
+            if(get(mid) < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Insert a value at index, the caller is responsible for keeping the vector sorted
+     */
+    void insert(int index, int value) {
+        insert(index, value, 0);
+    }
+
+    /**
+     * Insert a value with a payload at index, the caller is responsible for keeping the vector sorted
+     */
+    void insert(int index, int value, int payload) {
+        moveGap(index);
+        if(mGapLength == 0) {
+            grow();
+        }
+        if(mPayloads != null) {
+            mPayloads[mGapStart] = payload;
+        }
+        mValues[mGapStart++] = value;
+        mGapLength--;
+        mSize++;
+    }
+
+    /**
+     * Append a value, the caller is responsible for keeping the vector sorted
+     */
+    void add(int value) {
+        insert(mSize, value);
+    }
+
+    /**
+     * Remove the values in [start, end)
+     */
+    void delete(int start, int end) {
+        moveGap(end);
+        mGapStart = start;
+        mGapLength += end - start;
+        mSize -= end - start;
+    }
+
+    /**
+     * Add delta to every value from index onwards
+     */
+    void shift(int index, int delta) {
+        moveGap(index);
+        mDelta += delta;
+    }
+
+    private void moveGap(int index) {
+        if(index < mGapStart) {
+            for(int i = mGapStart - 1; i >= index; i--) {
+                mValues[i + mGapLength] = mValues[i] - mDelta;
+            }
+            if(mPayloads != null) {
+                System.arraycopy(mPayloads, index, mPayloads, index + mGapLength, mGapStart - index);
+            }
+        } else if(index > mGapStart) {
+            for(int i = mGapStart; i < index; i++) {
+                mValues[i] = mValues[i + mGapLength] + mDelta;
+            }
+            if(mPayloads != null) {
+                System.arraycopy(mPayloads, mGapStart + mGapLength, mPayloads, mGapStart, index - mGapStart);
+            }
+        }
+        mGapStart = index;
+        if(mGapStart == mSize) {
+            //nothing is stored after the gap, so the delta can start over
+            mDelta = 0;
+        }
+    }
+
+    private void grow() {
+        int[] values = new int[Math.max(16, mValues.length * 2)];
+        int after = mSize - mGapStart;
+        System.arraycopy(mValues, 0, values, 0, mGapStart);
+        System.arraycopy(mValues, mValues.length - after, values, values.length - after, after);
+        if(mPayloads != null) {
+            int[] payloads = new int[values.length];
+            System.arraycopy(mPayloads, 0, payloads, 0, mGapStart);
+            System.arraycopy(mPayloads, mValues.length - after, payloads, values.length - after, after);
+            mPayloads = payloads;
+        }
+        mGapLength = values.length - mSize;
+        mValues = values;
+    }
+}
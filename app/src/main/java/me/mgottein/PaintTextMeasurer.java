@@ -0,0 +1,24 @@
+package me.mgottein;
+
+import android.graphics.Paint;
+
+/**
+ * {@link TextMeasurer} backed by a {@see android.graphics.Paint}
+ */
+class PaintTextMeasurer implements TextMeasurer {
+    private final Paint mPaint;
+
+    PaintTextMeasurer(Paint paint) {
+        mPaint = paint;
+    }
+
+    @Override
+    public float measureText(char[] text, int start, int count) {
+        return mPaint.measureText(text, start, count);
+    }
+
+    @Override
+    public float measureText(String text) {
+        return mPaint.measureText(text);
+    }
+}
@@ -0,0 +1,50 @@
+package me.mgottein;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+/**
+ * Collects the glyphs and positions of every line number in a frame so they can be drawn with a single
+ * {@see android.graphics.Canvas#drawPosText} call. Positions are added up from the cached char advances, so nothing
+ * is measured per frame. The arrays are reused between frames.
+ */
+class PosTextBatch {
+    private char[] mText = new char[256];
+    //x, y pairs for every char in mText
+    private float[] mPositions = new float[512];
+    private int mLength;
+
+    /**
+     * Add text left aligned at x with its baseline at y
+     * @param widths advances of the paint the batch is drawn with
+     * @param length number of chars in text
+     */
+    void add(LineNumberWidths widths, char[] text, int length, float x, float y) {
+        if(mLength + length > mText.length) {
+            int capacity = Math.max(mText.length * 2, mLength + length);
+            char[] newText = new char[capacity];
+            float[] newPositions = new float[capacity * 2];
+            System.arraycopy(mText, 0, newText, 0, mLength);
+            System.arraycopy(mPositions, 0, newPositions, 0, mLength * 2);
+            mText = newText;
+            mPositions = newPositions;
+        }
+        for(int i = 0; i < length; i++) {
+            mText[mLength] = text[i];
+            mPositions[mLength * 2] = x;
+            mPositions[mLength * 2 + 1] = y;
+            x += widths.getAdvance(text[i]);
+            mLength++;
+        }
+    }
+
+    /**
+     * Draw everything added since the last draw and empty the batch
+     */
+    void draw(Canvas canvas, Paint paint) {
+        if(mLength > 0) {
+            canvas.drawPosText(mText, 0, mLength, mPositions, paint);
+            mLength = 0;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package me.mgottein;
+
+import java.util.Arrays;
+
+/**
+ * Tokens and line states of a text for incremental syntax highlighting. An edit only forgets the tokens of the lines
+ * it touched, lines are tokenized again in background jobs from the first forgotten line until a line starts in the
+ * same state as before, the lines after it keep their tokens. Every edit bumps the text version, jobs made for an
+ * older version are dropped.
+ */
+class SyntaxHighlighter {
+    //source lines tokenized per background job
+    static final int CHUNK_LINES = 1000;
+
+    /**
+     * Tokenizes a chunk of source lines from a copy of their text, safe to run on any thread
+     */
+    static class Job implements Runnable {
+        private final Tokenizer mTokenizer;
+        private final int mVersion;
+        private final int mFirstLine;
+        private final String mText;
+        private final int[] mLineStarts;
+        private final int[] mLineEnds;
+        private final int mState;
+        //results, one per line
+        private final int[][] mTokens;
+        private final int[] mEndStates;
+
+        Job(Tokenizer tokenizer, int version, int firstLine, String text, int[] lineStarts, int[] lineEnds, int state) {
+            mTokenizer = tokenizer;
+            mVersion = version;
+            mFirstLine = firstLine;
+            mText = text;
+            mLineStarts = lineStarts;
+            mLineEnds = lineEnds;
+            mState = state;
+            mTokens = new int[lineStarts.length][];
+            mEndStates = new int[lineStarts.length];
+        }
+
+        @Override
+        public void run() {
+            TokenBuffer buffer = new TokenBuffer();
+            int state = mState;
+            for(int i = 0; i < mLineStarts.length; i++) {
+                buffer.reset(mLineStarts[i]);
+                state = mTokenizer.tokenizeLine(mText, mLineStarts[i], mLineEnds[i], state, buffer);
+                mTokens[i] = buffer.toArray();
+                mEndStates[i] = state;
+            }
+        }
+    }
+
+    private final Tokenizer mTokenizer;
+    private final LineIndex mLines = new LineIndex();
+    private int mVersion;
+    private int mLineCount;
+    //state at the start of each line
+    private int[] mStates;
+    //tokens of each line as (start, end, type) relative to the line start, null after an edit until tokenized again
+    private int[][] mTokens;
+    //lines whose tokens changed since their spans were applied
+    private boolean[] mSpansDirty;
+    //lines before this are tokenized from the right state
+    private int mValidLines;
+
+    SyntaxHighlighter(Tokenizer tokenizer, CharSequence text) {
+        mTokenizer = tokenizer;
+        reset(text);
+    }
+
+    /**
+     * Forget all tokens, the whole text is tokenized again
+     */
+    void reset(CharSequence text) {
+        mLines.reset(text);
+        mLineCount = mLines.getLineCount();
+        int capacity = mLineCount + 16;
+        mStates = new int[capacity];
+        mTokens = new int[capacity][];
+        mSpansDirty = new boolean[capacity];
+        mStates[0] = Tokenizer.INITIAL_STATE;
+        mValidLines = 0;
+        mVersion++;
+    }
+
+    /**
+     * Forget the tokens of the lines lengthBefore chars starting at start were replaced in
+     * @param text the text after the change
+     */
+    void onTextChanged(CharSequence text, int start, int lengthBefore, int lengthAfter) {
+        int line = mLines.getLineForOffset(start);
+        int removedLines = mLines.getLineForOffset(start + lengthBefore) - line;
+        mLines.onTextChanged(text, start, lengthBefore, lengthAfter);
+        int insertedLines = mLines.getLineForOffset(start + lengthAfter) - line;
+
+        int oldLineCount = mLineCount;
+        mLineCount = oldLineCount - removedLines + insertedLines;
+        if(mLineCount > mStates.length) {
+            int capacity = mLineCount + (mLineCount >> 1);
+            mStates = Arrays.copyOf(mStates, capacity);
+            mTokens = Arrays.copyOf(mTokens, capacity);
+            mSpansDirty = Arrays.copyOf(mSpansDirty, capacity);
+        }
+        //lines after the edit keep their tokens and states
+        int from = line + removedLines + 1, to = line + insertedLines + 1;
+        if(from != to && from < oldLineCount) {
+            System.arraycopy(mStates, from, mStates, to, oldLineCount - from);
+            System.arraycopy(mTokens, from, mTokens, to, oldLineCount - from);
+            System.arraycopy(mSpansDirty, from, mSpansDirty, to, oldLineCount - from);
+        }
+        //the edited line keeps its start state, the state of the lines inserted after it isn't known yet
+        for(int i = line; i < to; i++) {
+            mTokens[i] = null;
+            mSpansDirty[i] = false;
+        }
+        for(int i = mLineCount; i < oldLineCount; i++) {
+            mTokens[i] = null;
+        }
+        mValidLines = Math.min(mValidLines, line);
+        mVersion++;
+    }
+
+    /**
+     * @return if every line is tokenized
+     */
+    boolean isDone() {
+        return mValidLines >= mLineCount;
+    }
+
+    /**
+     * @param text the current text
+     * @return a job for the next chunk of lines to tokenize, or null if every line is tokenized
+     */
+    Job nextJob(CharSequence text) {
+        if(isDone()) {
+            return null;
+        }
+        int firstLine = mValidLines, endLine = Math.min(firstLine + CHUNK_LINES, mLineCount);
+        int start = mLines.getLineStart(firstLine);
+        int end = endLine < mLineCount ? mLines.getLineStart(endLine) - 1 : text.length();
+        int[] lineStarts = new int[endLine - firstLine];
+        int[] lineEnds = new int[endLine - firstLine];
+        for(int i = 0; i < lineStarts.length; i++) {
+            lineStarts[i] = mLines.getLineStart(firstLine + i) - start;
+            lineEnds[i] = i + 1 < lineStarts.length ? mLines.getLineStart(firstLine + i + 1) - 1 - start : end - start;
+        }
+        String chunk = new StringBuilder(end - start).append(text, start, end).toString();
+        return new Job(mTokenizer, mVersion, firstLine, chunk, lineStarts, lineEnds, mStates[firstLine]);
+    }
+
+    /**
+     * Store the tokens of a finished job, up to the first line that starts in the same state as before
+     * @return false if the text changed since the job was made, the job is dropped
+     */
+    boolean apply(Job job) {
+        if(job.mVersion != mVersion) {
+            return false;
+        }
+        int state = job.mState;
+        int line = job.mFirstLine, endLine = line + job.mTokens.length;
+        for(; line < endLine; line++) {
+            if(line > job.mFirstLine && mTokens[line] != null && mStates[line] == state) {
+                break;
+            }
+            int[] tokens = job.mTokens[line - job.mFirstLine];
+            if(!Arrays.equals(mTokens[line], tokens)) {
+                mSpansDirty[line] = true;
+            }
+            mTokens[line] = tokens;
+            mStates[line] = state;
+            state = job.mEndStates[line - job.mFirstLine];
+        }
+        if(line == endLine && line < mLineCount && (mTokens[line] == null || mStates[line] != state)) {
+            //not converged yet, the next job goes on from here
+            mStates[line] = state;
+            mValidLines = line;
+            return true;
+        }
+        //the state converged, the tokens of the lines after it are still right up to the next edited line
+        while(line < mLineCount && mTokens[line] != null) {
+            line++;
+        }
+        mValidLines = line;
+        return true;
+    }
+
+    int getLineCount() {
+        return mLineCount;
+    }
+
+    int getLineForOffset(int offset) {
+        return mLines.getLineForOffset(offset);
+    }
+
+    int getLineStart(int line) {
+        return mLines.getLineStart(line);
+    }
+
+    /**
+     * @return if line is tokenized and its spans need to be applied
+     */
+    boolean isSpansDirty(int line) {
+        return line < mValidLines && mSpansDirty[line];
+    }
+
+    /**
+     * @return tokens of a tokenized line as (start, end, type) relative to the line start
+     */
+    int[] getTokens(int line) {
+        return mTokens[line];
+    }
+
+    /**
+     * Apply the spans of every tokenized line again
+     */
+    void invalidateSpans() {
+        Arrays.fill(mSpansDirty, 0, mLineCount, true);
+    }
+
+    void onSpansApplied(int line) {
+        mSpansDirty[line] = false;
+    }
+}
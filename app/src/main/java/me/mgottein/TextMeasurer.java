@@ -0,0 +1,10 @@
+package me.mgottein;
+
+/**
+ * Measures line number text, backed by the line number {@see android.graphics.Paint} in the view
+ */
+interface TextMeasurer {
+    float measureText(char[] text, int start, int count);
+
+    float measureText(String text);
+}
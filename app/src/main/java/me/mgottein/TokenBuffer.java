@@ -0,0 +1,49 @@
+package me.mgottein;
+
+/**
+ * Tokens of one source line, as (start, end, type) triples
+ */
+public class TokenBuffer {
+    private static final int[] EMPTY = new int[0];
+
+    private int[] mTokens = new int[48];
+    private int mSize;
+    //offsets are stored relative to the start of the line
+    private int mLineStart;
+
+    void reset(int lineStart) {
+        mLineStart = lineStart;
+        mSize = 0;
+    }
+
+    /**
+     * @param start start of the token in the tokenized text
+     * @param end end of the token
+     * @param type what kind of token it is, colors are set per type
+     */
+    public void addToken(int start, int end, int type) {
+        if(end <= start) {
+            return;
+        }
+        if(mSize + 3 > mTokens.length) {
+            int[] tokens = new int[mTokens.length * 2];
+            System.arraycopy(mTokens, 0, tokens, 0, mSize);
+            mTokens = tokens;
+        }
+        mTokens[mSize++] = start - mLineStart;
+        mTokens[mSize++] = end - mLineStart;
+        mTokens[mSize++] = type;
+    }
+
+    /**
+     * @return the tokens added since the last reset, trimmed to size
+     */
+    int[] toArray() {
+        if(mSize == 0) {
+            return EMPTY;
+        }
+        int[] tokens = new int[mSize];
+        System.arraycopy(mTokens, 0, tokens, 0, mSize);
+        return tokens;
+    }
+}
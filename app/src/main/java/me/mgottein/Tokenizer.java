@@ -0,0 +1,24 @@
+package me.mgottein;
+
+/**
+ * Splits source lines into typed tokens for syntax highlighting. Lines are tokenized one after the other, the state a
+ * line ends in is the state the next line starts in (for example inside a block comment), so after an edit only the
+ * lines up to where the state is the same as before are tokenized again. Doesn't depend on the Android framework.
+ */
+public interface Tokenizer {
+    /**
+     * State of the first line
+     */
+    public static final int INITIAL_STATE = 0;
+
+    /**
+     * Called on a background thread, so it must not touch the view
+     * @param text text containing the line
+     * @param start start of the line
+     * @param end end of the line, excluding the newline
+     * @param state state at the start of the line
+     * @param tokens receives the tokens of the line, with offsets into text
+     * @return state at the start of the next line
+     */
+    public int tokenizeLine(CharSequence text, int start, int end, int state, TokenBuffer tokens);
+}
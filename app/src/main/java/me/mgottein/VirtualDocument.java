@@ -0,0 +1,86 @@
+package me.mgottein;
+
+/**
+ * A document too large to lay out at once. Only a window of whole source lines is handed to the view, edits made to
+ * the window are written back to the document. The original text is only copied once it is first edited.
+ */
+class VirtualDocument {
+    private CharSequence mText;
+    //null until the first edit
+    private GapText mEditableText;
+    private final LineIndex mLines = new LineIndex();
+    //source lines [mWindowStart, mWindowEnd) are in the window
+    private int mWindowStart;
+    private int mWindowEnd;
+
+    VirtualDocument(CharSequence text) {
+        mText = text;
+        mLines.reset(text);
+    }
+
+    /**
+     * @return the whole document
+     */
+    CharSequence getText() {
+        return mText;
+    }
+
+    LineIndex getLineIndex() {
+        return mLines;
+    }
+
+    int getLineCount() {
+        return mLines.getLineCount();
+    }
+
+    int getWindowStartLine() {
+        return mWindowStart;
+    }
+
+    int getWindowEndLine() {
+        return mWindowEnd;
+    }
+
+    /**
+     * @return offset of the window in the document
+     */
+    int getWindowStartOffset() {
+        return mLines.getLineStart(mWindowStart);
+    }
+
+    private int getWindowEndOffset() {
+        //leave out the newline after the last line, otherwise the window would end in an extra empty line
+        return mWindowEnd == mLines.getLineCount() ? mText.length() : mLines.getLineStart(mWindowEnd) - 1;
+    }
+
+    /**
+     * Move the window
+     * @param startLine first source line in the window
+     * @param endLine source line after the last one in the window
+     * @return text of the window
+     */
+    CharSequence setWindow(int startLine, int endLine) {
+        mWindowStart = Math.max(0, startLine);
+        mWindowEnd = Math.max(mWindowStart + 1, Math.min(endLine, mLines.getLineCount()));
+        return mText.subSequence(getWindowStartOffset(), getWindowEndOffset());
+    }
+
+    /**
+     * Write an edit made to the window back to the document
+     * @param windowText the window after the change
+     * @param start start of the change in the window
+     * @param lengthBefore number of chars that were replaced
+     * @param lengthAfter number of chars that replaced them
+     */
+    void onWindowChanged(CharSequence windowText, int start, int lengthBefore, int lengthAfter) {
+        if(mEditableText == null) {
+            mEditableText = new GapText(mText);
+            mText = mEditableText;
+        }
+        int documentStart = getWindowStartOffset() + start;
+        int lineCount = mLines.getLineCount();
+        mEditableText.replace(documentStart, documentStart + lengthBefore, windowText, start, start + lengthAfter);
+        mLines.onTextChanged(mEditableText, documentStart, lengthBefore, lengthAfter);
+        mWindowEnd += mLines.getLineCount() - lineCount;
+    }
+}
@@ -0,0 +1,98 @@
+package me.mgottein;
+
+/**
+ * The visible line range and the baselines of the visible lines, kept between frames. A small scroll walks the range
+ * from where it was and only reads the baselines of the lines that scrolled into view, instead of two binary searches
+ * and a baseline lookup per line.
+ */
+class VisibleLineCache {
+    private boolean mValid;
+    private int mTop;
+    private int mBottom;
+    private int mFirstLine;
+    private int mLastLine;
+    //baselines of [mFirstLine, mLastLine]
+    private int[] mBaselines = new int[64];
+
+    /**
+     * Forget the cached lines, call whenever lines could have moved (the text or layout changed)
+     */
+    void invalidate() {
+        mValid = false;
+    }
+
+    /**
+     * Update the range to the lines between two vertical positions of the layout
+     */
+    void update(LineMetrics metrics, int top, int bottom) {
+        if(mValid && top == mTop && bottom == mBottom) {
+            return;
+        }
+        int firstLine, lastLine;
+        if(mValid && Math.abs(top - mTop) < bottom - top && Math.abs(bottom - mBottom) < bottom - top) {
+            firstLine = walk(metrics, mFirstLine, top);
+            lastLine = walk(metrics, mLastLine, bottom);
+        } else {
+            firstLine = LineNumberGutter.getLineForVertical(metrics, top);
+            lastLine = LineNumberGutter.getLineForVertical(metrics, bottom);
+        }
+        updateBaselines(metrics, firstLine, lastLine);
+        mValid = true;
+        mTop = top;
+        mBottom = bottom;
+    }
+
+    //same result as LineNumberGutter.getLineForVertical, starting from a line close to it
+    private static int walk(LineMetrics metrics, int line, int vertical) {
+        int lineCount = metrics.getLineCount();
+        while(line + 1 < lineCount && metrics.getLineTop(line + 1) <= vertical) {
+            line++;
+        }
+        while(line > 0 && metrics.getLineTop(line) > vertical) {
+            line--;
+        }
+        return line;
+    }
+
+    private void updateBaselines(LineMetrics metrics, int firstLine, int lastLine) {
+        int count = lastLine - firstLine + 1;
+        int[] baselines = mBaselines.length >= count ? mBaselines : new int[Math.max(count, mBaselines.length * 2)];
+        //keep the baselines of the lines that stayed visible
+        int keepFirst = mValid ? Math.max(firstLine, mFirstLine) : 0;
+        int keepLast = mValid ? Math.min(lastLine, mLastLine) : -1;
+        if(keepFirst <= keepLast) {
+            System.arraycopy(mBaselines, keepFirst - mFirstLine, baselines, keepFirst - firstLine, keepLast - keepFirst + 1);
+        } else {
+            keepFirst = lastLine + 1;
+            keepLast = lastLine;
+        }
+        for(int line = firstLine; line < keepFirst; line++) {
+            baselines[line - firstLine] = metrics.getLineBaseline(line);
+        }
+        for(int line = keepLast + 1; line <= lastLine; line++) {
+            baselines[line - firstLine] = metrics.getLineBaseline(line);
+        }
+        mBaselines = baselines;
+        mFirstLine = firstLine;
+        mLastLine = lastLine;
+    }
+
+    int getFirstLine() {
+        return mFirstLine;
+    }
+
+    int getLastLine() {
+        return mLastLine;
+    }
+
+    /**
+     * @return if the baseline of line is cached
+     */
+    boolean contains(int line) {
+        return mValid && line >= mFirstLine && line <= mLastLine;
+    }
+
+    int getBaseline(int line) {
+        return mBaselines[line - mFirstLine];
+    }
+}
@@ -0,0 +1,74 @@
+package me.mgottein;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EditRangeTest {
+
+    @Test
+    public void startsEmpty() {
+        EditRange range = new EditRange();
+        assertTrue(range.isEmpty());
+        range.add(1, 2, 3);
+        range.clear();
+        assertTrue(range.isEmpty());
+    }
+
+    @Test
+    public void singleEdit() {
+        EditRange range = new EditRange();
+        range.add(4, 2, 5);
+        assertEquals(4, range.getStart());
+        assertEquals(2, range.getLengthBefore());
+        assertEquals(5, range.getLengthAfter());
+    }
+
+    @Test
+    public void editsFarApartCoverEverythingBetween() {
+        EditRange range = new EditRange();
+        //"0123456789" -> "01x23456789" -> "01x234567y89"
+        range.add(2, 0, 1);
+        range.add(9, 0, 1);
+        assertEquals(2, range.getStart());
+        assertEquals(6, range.getLengthBefore());
+        assertEquals(8, range.getLengthAfter());
+    }
+
+    @Test
+    public void editBeforeTheRange() {
+        EditRange range = new EditRange();
+        range.add(5, 1, 1);
+        //deletes 2 chars in front of the range
+        range.add(0, 2, 0);
+        assertEquals(0, range.getStart());
+        assertEquals(6, range.getLengthBefore());
+        assertEquals(4, range.getLengthAfter());
+    }
+
+    //replacing the merged range of the old text with the same range of the new text gives the new text
+    @Test
+    public void mergedRangeReproducesRandomEdits() {
+        Random random = new Random(3);
+        for(int round = 0; round < 500; round++) {
+            StringBuilder text = new StringBuilder("some text\nwith\nlines");
+            String before = text.toString();
+            EditRange range = new EditRange();
+            for(int edit = random.nextInt(5) + 1; edit > 0; edit--) {
+                int start = random.nextInt(text.length() + 1);
+                int lengthBefore = Math.min(text.length() - start, random.nextInt(4));
+                String inserted = "abc\n".substring(0, random.nextInt(5));
+                text.replace(start, start + lengthBefore, inserted);
+                range.add(start, lengthBefore, inserted.length());
+            }
+            int start = range.getStart();
+            String merged = before.substring(0, start)
+                    + text.substring(start, start + range.getLengthAfter())
+                    + before.substring(start + range.getLengthBefore());
+            assertEquals(text.toString(), merged);
+        }
+    }
+}
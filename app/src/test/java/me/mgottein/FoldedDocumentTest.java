@@ -0,0 +1,131 @@
+package me.mgottein;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class FoldedDocumentTest {
+
+    private StringBuilder mProjection;
+    private FoldedDocument mDocument;
+
+    @Before
+    public void setUp() {
+        mProjection = new StringBuilder();
+        for(int i = 0; i < 10; i++) {
+            mProjection.append("line").append(i).append(i < 9 ? "\n" : "");
+        }
+        mDocument = new FoldedDocument(mProjection);
+    }
+
+    //the way the view folds: the returned range is removed from the projection
+    private void fold(int firstLine, int lastLine) {
+        int[] range = mDocument.fold(firstLine, lastLine);
+        mProjection.delete(range[0], range[1]);
+    }
+
+    private void unfold(int index) {
+        int offset = mDocument.getFoldOffset(index);
+        CharSequence text = mDocument.getFoldText(index);
+        mDocument.removeFold(index);
+        mProjection.insert(offset, text);
+    }
+
+    private void replace(int start, int end, String text) {
+        mProjection.replace(start, end, text);
+        mDocument.onProjectionChanged(mProjection, start, end - start, text.length());
+    }
+
+    @Test
+    public void foldHidesLinesAfterTheFirst() {
+        fold(2, 4);
+        assertEquals("line0\nline1\nline2\nline5\nline6\nline7\nline8\nline9", mProjection.toString());
+        assertEquals(10, mDocument.getLineCount());
+        assertEquals(2, mDocument.toDocumentLine(2));
+        assertEquals(5, mDocument.toDocumentLine(3));
+        //folded lines map to the first line of their fold
+        assertEquals(2, mDocument.toProjectionLine(3));
+        assertEquals(2, mDocument.toProjectionLine(4));
+        assertEquals(3, mDocument.toProjectionLine(5));
+    }
+
+    @Test
+    public void foldsInsideARangeAreMerged() {
+        fold(3, 4);
+        fold(1, 6);
+        assertEquals(1, mDocument.getFoldCount());
+        assertEquals(7, mDocument.toDocumentLine(2));
+        //a hidden line can't start a fold
+        assertNull(mDocument.fold(3, 5));
+    }
+
+    @Test
+    public void unfoldRestoresTheText() {
+        String text = mProjection.toString();
+        fold(1, 2);
+        fold(5, 8);
+        unfold(1);
+        unfold(0);
+        assertEquals(text, mProjection.toString());
+        assertEquals(text, mDocument.getText().toString());
+    }
+
+    @Test
+    public void editsAreWrittenBackToTheDocument() {
+        fold(2, 4);
+        //after the fold, then on the folded line's end which stays in front of the hidden text
+        replace(mProjection.indexOf("line6"), mProjection.indexOf("line6") + 5, "six");
+        replace(mProjection.indexOf("line2") + 5, mProjection.indexOf("line2") + 5, "!");
+        unfold(0);
+        assertEquals("line0\nline1\nline2!\nline3\nline4\nline5\nsix\nline7\nline8\nline9",
+                mDocument.getText().toString());
+        assertEquals(mDocument.getText().toString(), mProjection.toString());
+    }
+
+    @Test
+    public void lastChangeIsInDocumentLines() {
+        fold(2, 4);
+        //adds a line in front of line6, projection line 4
+        int start = mProjection.indexOf("line6");
+        replace(start, start, "new\n");
+        LineIndex lines = mDocument.getLineIndex();
+        assertEquals(6, lines.getChangedLine());
+        assertEquals(0, lines.getRemovedLines());
+        assertEquals(1, lines.getInsertedLines());
+        assertEquals(true, lines.isChangeAtLineStart());
+    }
+
+    @Test
+    public void deletingAFoldedLinesEndRemovesItsFold() {
+        fold(2, 4);
+        //joins line2 and line5, taking the folded lines 3 and 4 with it
+        int end = mProjection.indexOf("line5");
+        replace(end - 1, end, "");
+        assertEquals(0, mDocument.getFoldCount());
+        assertEquals(7, mDocument.getLineCount());
+        LineIndex lines = mDocument.getLineIndex();
+        assertEquals(2, lines.getChangedLine());
+        assertEquals(3, lines.getRemovedLines());
+        assertEquals(mProjection.toString(), mDocument.getText().toString());
+    }
+
+    //markers are kept in document lines, folding doesn't move them and edits move them by document lines
+    @Test
+    public void markersSurviveFoldingAndEdits() {
+        LineMarkers markers = new LineMarkers();
+        markers.set(3, 1);
+        markers.set(8, 2);
+        fold(2, 4);
+        int start = mProjection.indexOf("line0");
+        replace(start, start, "new\n");
+        LineIndex lines = mDocument.getLineIndex();
+        markers.onLinesChanged(lines.getChangedLine(), lines.getRemovedLines(), lines.getInsertedLines(),
+                lines.isChangeAtLineStart());
+        unfold(0);
+        assertEquals(1, markers.get(4));
+        assertEquals(2, markers.get(9));
+        assertEquals("line3", mDocument.getText().toString().split("\n")[4]);
+    }
+}
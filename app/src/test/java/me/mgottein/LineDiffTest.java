@@ -0,0 +1,102 @@
+package me.mgottein;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class LineDiffTest {
+
+    //old and new line of every unified line, "-" for a missing one
+    private static String describe(LineDiff diff) {
+        StringBuilder builder = new StringBuilder();
+        for(int i = 0; i < diff.getLineCount(); i++) {
+            int oldLine = diff.getOldLine(i), newLine = diff.getNewLine(i);
+            builder.append(oldLine < 0 ? "-" : String.valueOf(oldLine)).append(':')
+                    .append(newLine < 0 ? "-" : String.valueOf(newLine)).append(' ');
+        }
+        return builder.toString().trim();
+    }
+
+    private static int changedLines(LineDiff diff) {
+        int changed = 0;
+        for(int i = 0; i < diff.getLineCount(); i++) {
+            if(diff.getOldLine(i) < 0 || diff.getNewLine(i) < 0) {
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    @Test
+    public void equalTexts() {
+        LineDiff diff = LineDiff.compute("a\nb\nc", "a\nb\nc");
+        assertEquals("a\nb\nc", diff.getText().toString());
+        assertEquals("0:0 1:1 2:2", describe(diff));
+        assertEquals(3, diff.getOldLineCount());
+        assertEquals(3, diff.getNewLineCount());
+    }
+
+    @Test
+    public void removedLinesComeBeforeAddedOnes() {
+        LineDiff diff = LineDiff.compute("a\nb\nc", "a\nx\nc");
+        assertEquals("a\nb\nx\nc", diff.getText().toString());
+        assertEquals("0:0 1:- -:1 2:2", describe(diff));
+    }
+
+    @Test
+    public void insertedAndDeletedLines() {
+        LineDiff diff = LineDiff.compute("a\nb\nc\nd", "b\nc\ne\nd\nf");
+        assertEquals("a\nb\nc\ne\nd\nf", diff.getText().toString());
+        assertEquals("0:- 1:0 2:1 -:2 3:3 -:4", describe(diff));
+        assertEquals(4, diff.getOldLineCount());
+        assertEquals(5, diff.getNewLineCount());
+    }
+
+    @Test
+    public void nothingInCommon() {
+        LineDiff diff = LineDiff.compute("a\nb", "c");
+        assertEquals("a\nb\nc", diff.getText().toString());
+        assertEquals("0:- 1:- -:0", describe(diff));
+    }
+
+    @Test
+    public void emptyTexts() {
+        LineDiff diff = LineDiff.compute("", "a");
+        assertEquals("0:- -:0", describe(diff));
+        assertEquals("\na", diff.getText().toString());
+    }
+
+    //the classic example of Myers' paper has a shortest edit script of 5
+    @Test
+    public void shortestEditScript() {
+        LineDiff diff = LineDiff.compute("a\nb\nc\na\nb\nb\na", "c\nb\na\nb\na\nc");
+        assertEquals(5, changedLines(diff));
+        assertEquals(7, diff.getOldLineCount());
+        assertEquals(6, diff.getNewLineCount());
+        assertEquals(9, diff.getLineCount());
+    }
+
+    //every line of both texts is in the unified text once, in order
+    @Test
+    public void unifiedLinesMapBackToBothTexts() {
+        String oldText = "1\n2\n3\n4\n5\n6\n7\n8", newText = "0\n2\n3\n9\n5\n7\n8\n8";
+        LineDiff diff = LineDiff.compute(oldText, newText);
+        String[] oldLines = oldText.split("\n"), newLines = newText.split("\n");
+        String[] lines = diff.getText().toString().split("\n", -1);
+        assertEquals(diff.getLineCount(), lines.length);
+        int nextOld = 0, nextNew = 0;
+        for(int i = 0; i < lines.length; i++) {
+            if(diff.getOldLine(i) >= 0) {
+                assertEquals(nextOld++, diff.getOldLine(i));
+                assertEquals(oldLines[diff.getOldLine(i)], lines[i]);
+            }
+            if(diff.getNewLine(i) >= 0) {
+                assertEquals(nextNew++, diff.getNewLine(i));
+                assertEquals(newLines[diff.getNewLine(i)], lines[i]);
+            }
+        }
+        assertEquals(oldLines.length, nextOld);
+        assertEquals(newLines.length, nextNew);
+        assertEquals(6, changedLines(diff));
+    }
+}
@@ -0,0 +1,105 @@
+package me.mgottein;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class LineIndexTest {
+
+    //every line start and the line of every offset, checked against the text
+    private static void assertIndexes(LineIndex index, CharSequence text) {
+        int line = 0;
+        assertEquals(0, index.getLineStart(0));
+        for(int i = 0; i < text.length(); i++) {
+            assertEquals(line, index.getLineForOffset(i));
+            if(text.charAt(i) == '\n') {
+                line++;
+                assertEquals(i + 1, index.getLineStart(line));
+            }
+        }
+        assertEquals(line + 1, index.getLineCount());
+    }
+
+    @Test
+    public void emptyTextHasOneLine() {
+        LineIndex index = new LineIndex();
+        index.reset("");
+        assertEquals(1, index.getLineCount());
+        assertEquals(0, index.getLineForOffset(0));
+    }
+
+    @Test
+    public void reset() {
+        LineIndex index = new LineIndex();
+        index.reset("a\nbc\n\nd");
+        assertEquals(4, index.getLineCount());
+        assertEquals(2, index.getLineStart(1));
+        assertEquals(5, index.getLineStart(2));
+        assertEquals(6, index.getLineStart(3));
+        //a newline belongs to the line it ends
+        assertEquals(0, index.getLineForOffset(1));
+        assertEquals(1, index.getLineForOffset(2));
+    }
+
+    @Test
+    public void insertAndDeleteLines() {
+        StringBuilder text = new StringBuilder("1\n2\n3");
+        LineIndex index = new LineIndex();
+        index.reset(text);
+
+        text.insert(2, "x\ny\n");
+        index.onTextChanged(text, 2, 0, 4);
+        assertIndexes(index, text);
+
+        text.delete(1, 6);
+        index.onTextChanged(text, 1, 5, 0);
+        assertIndexes(index, text);
+    }
+
+    @Test
+    public void lastChange() {
+        StringBuilder text = new StringBuilder("a\nb\nc\nd");
+        LineIndex index = new LineIndex();
+        index.reset(text);
+        //"b\nc" becomes "x\ny\nz"
+        text.replace(2, 5, "x\ny\nz");
+        index.onTextChanged(text, 2, 3, 5);
+        assertEquals(1, index.getChangedLine());
+        assertEquals(1, index.getRemovedLines());
+        assertEquals(2, index.getInsertedLines());
+        assertEquals(false, index.isChangeAtLineStart());
+
+        text.insert(0, "0\n");
+        index.onTextChanged(text, 0, 0, 2);
+        assertEquals(0, index.getChangedLine());
+        assertEquals(true, index.isChangeAtLineStart());
+
+        //removes the line "a" from its start up to the next line's start
+        text.delete(2, 4);
+        index.onTextChanged(text, 2, 2, 0);
+        assertEquals(1, index.getChangedLine());
+        assertEquals(1, index.getRemovedLines());
+        assertEquals(true, index.isChangeAtLineStart());
+    }
+
+    @Test
+    public void matchesRandomEdits() {
+        Random random = new Random(2);
+        StringBuilder text = new StringBuilder();
+        LineIndex index = new LineIndex();
+        index.reset(text);
+        for(int step = 0; step < 2000; step++) {
+            int start = random.nextInt(text.length() + 1);
+            int lengthBefore = Math.min(text.length() - start, random.nextInt(6));
+            StringBuilder inserted = new StringBuilder();
+            for(int i = random.nextInt(6); i > 0; i--) {
+                inserted.append(random.nextInt(3) == 0 ? '\n' : 'a');
+            }
+            text.replace(start, start + lengthBefore, inserted.toString());
+            index.onTextChanged(text, start, lengthBefore, inserted.length());
+            assertIndexes(index, text);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package me.mgottein;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LineMarkersTest {
+
+    private static final int ERROR = 1;
+    private static final int WARNING = 2;
+
+    private StringBuilder mText;
+    private LineIndex mLines;
+    private LineMarkers mMarkers;
+
+    @Before
+    public void setUp() {
+        mText = new StringBuilder();
+        for(int i = 0; i < 20; i++) {
+            mText.append("line ").append(i).append('\n');
+        }
+        mLines = new LineIndex();
+        mLines.reset(mText);
+        mMarkers = new LineMarkers();
+    }
+
+    //the way the view follows an edit: update the index, then move the markers by the lines it changed
+    private void replace(int start, int end, String text) {
+        mText.replace(start, end, text);
+        mLines.onTextChanged(mText, start, end - start, text.length());
+        mMarkers.onLinesChanged(mLines.getChangedLine(), mLines.getRemovedLines(), mLines.getInsertedLines(),
+                mLines.isChangeAtLineStart());
+    }
+
+    private int lineStart(int line) {
+        return mLines.getLineStart(line);
+    }
+
+    @Test
+    public void setAndGet() {
+        assertTrue(mMarkers.set(3, ERROR));
+        assertFalse(mMarkers.set(3, ERROR));
+        assertEquals(ERROR, mMarkers.get(3));
+        assertEquals(0, mMarkers.get(4));
+        assertTrue(mMarkers.set(3, 0));
+        assertEquals(0, mMarkers.size());
+    }
+
+    @Test
+    public void addAllMergesWithExistingMarkers() {
+        mMarkers.set(5, ERROR);
+        mMarkers.addAll(new int[] {7, 5, 1, 7}, 4, WARNING);
+        assertEquals(3, mMarkers.size());
+        assertEquals(WARNING, mMarkers.get(1));
+        assertEquals(ERROR | WARNING, mMarkers.get(5));
+        assertEquals(WARNING, mMarkers.get(7));
+    }
+
+    @Test
+    public void clearOneMarker() {
+        mMarkers.set(1, ERROR | WARNING);
+        mMarkers.set(2, WARNING);
+        assertTrue(mMarkers.clear(WARNING));
+        assertEquals(1, mMarkers.size());
+        assertEquals(ERROR, mMarkers.get(1));
+    }
+
+    @Test
+    public void insertedLinesMoveLaterMarkers() {
+        mMarkers.set(2, ERROR);
+        mMarkers.set(10, WARNING);
+        replace(lineStart(5), lineStart(5), "a\nb\n");
+        assertEquals(ERROR, mMarkers.get(2));
+        assertEquals(WARNING, mMarkers.get(12));
+    }
+
+    @Test
+    public void removedLinesTakeTheirMarkers() {
+        mMarkers.set(4, ERROR);
+        mMarkers.set(6, WARNING);
+        mMarkers.set(9, ERROR);
+        //joins lines 3 to 7
+        replace(lineStart(4) - 1, lineStart(7) + 2, "");
+        assertEquals(0, mMarkers.get(4));
+        assertEquals(0, mMarkers.get(6));
+        assertEquals(ERROR, mMarkers.get(5));
+        assertEquals(1, mMarkers.size());
+    }
+
+    @Test
+    public void insertingAtLineStartMovesTheLine() {
+        mMarkers.set(4, ERROR);
+        replace(lineStart(4), lineStart(4), "new\n");
+        assertEquals(0, mMarkers.get(4));
+        assertEquals(ERROR, mMarkers.get(5));
+    }
+
+    //a batch used to merge these into one range covering line 10, which removed its marker
+    @Test
+    public void markerBetweenTwoEditsOfABatchStays() {
+        mMarkers.set(10, ERROR);
+        replace(lineStart(2) + 1, lineStart(2) + 2, "x");
+        replace(lineStart(15) + 1, lineStart(15) + 2, "y");
+        assertEquals(1, mMarkers.size());
+        assertEquals(ERROR, mMarkers.get(10));
+    }
+
+    @Test
+    public void markerBetweenEditsThatMoveLines() {
+        mMarkers.set(10, ERROR);
+        //removes a line above the marker, then adds two below it
+        replace(lineStart(2), lineStart(3), "");
+        replace(lineStart(14), lineStart(14), "a\nb\n");
+        assertEquals(ERROR, mMarkers.get(9));
+        assertEquals(1, mMarkers.size());
+    }
+
+    //a whole line deleted from its start used to leave its marker on the next line and drop that line's own
+    @Test
+    public void deletingAMarkedLineAboveAnotherMarkedLine() {
+        mMarkers.set(1, ERROR);
+        mMarkers.set(2, WARNING);
+        replace(lineStart(1), lineStart(2), "");
+        assertEquals(1, mMarkers.size());
+        assertEquals(WARNING, mMarkers.get(1));
+        assertEquals("line 2", mText.substring(lineStart(1), lineStart(2) - 1));
+    }
+
+    @Test
+    public void replacingWholeLinesKeepsTheLinesAfterThem() {
+        mMarkers.set(3, ERROR);
+        mMarkers.set(5, WARNING);
+        //lines 3 and 4 become one new line
+        replace(lineStart(3), lineStart(5), "new\n");
+        assertEquals(1, mMarkers.size());
+        assertEquals(WARNING, mMarkers.get(4));
+    }
+}
@@ -0,0 +1,161 @@
+package me.mgottein;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LineNumberCacheTest {
+
+    //formats line numbers as "<line>:<call>", so a call is visible in the text, and hides line 13
+    private static class CountingController implements LineNumberController {
+        int mCalls;
+        String mSuffix = "";
+
+        @Override
+        public String getLineNumberText(boolean layoutOnLeft, int line) {
+            mCalls++;
+            return line + ":" + mCalls + mSuffix;
+        }
+
+        @Override
+        public boolean showLineNumber(int line) {
+            return line != 13;
+        }
+    }
+
+    //one unit per char
+    private static final TextMeasurer MEASURER = new TextMeasurer() {
+        @Override
+        public float measureText(char[] text, int start, int count) {
+            return count;
+        }
+
+        @Override
+        public float measureText(String text) {
+            return text.length();
+        }
+    };
+
+    private final CountingController mController = new CountingController();
+    private final char[] mBuffer = new char[LineNumberBufferController.MIN_BUFFER_SIZE];
+
+    private String text(LineNumberCache cache, int lineNumber) {
+        int slot = cache.get(mController, true, lineNumber, mBuffer, MEASURER);
+        return new String(cache.getText(slot), 0, cache.getLength(slot));
+    }
+
+    @Test
+    public void hitsDontCallTheController() {
+        LineNumberCache cache = new LineNumberCache(4, false);
+        assertEquals("1:1", text(cache, 1));
+        assertEquals("2:2", text(cache, 2));
+        assertEquals("1:1", text(cache, 1));
+        assertEquals(2, mController.mCalls);
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        int slot = cache.get(mController, true, 13, mBuffer, MEASURER);
+        assertFalse(cache.isShown(slot));
+        slot = cache.get(mController, true, 2, mBuffer, MEASURER);
+        assertTrue(cache.isShown(slot));
+        assertEquals(3f, cache.getWidth(slot), 0f);
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvicted() {
+        LineNumberCache cache = new LineNumberCache(3, false);
+        text(cache, 1);
+        text(cache, 2);
+        text(cache, 3);
+        text(cache, 1);
+        //evicts 2
+        text(cache, 4);
+        assertEquals("1:1", text(cache, 1));
+        assertEquals("3:3", text(cache, 3));
+        assertEquals("4:4", text(cache, 4));
+        assertEquals("2:5", text(cache, 2));
+    }
+
+    @Test
+    public void invalidateForgetsARange() {
+        LineNumberCache cache = new LineNumberCache(8, false);
+        for(int i = 1; i <= 5; i++) {
+            text(cache, i);
+        }
+        cache.invalidate(2, 3);
+        assertEquals("1:1", text(cache, 1));
+        assertEquals("2:6", text(cache, 2));
+        assertEquals("3:7", text(cache, 3));
+        assertEquals("4:4", text(cache, 4));
+        //entries still in use after slots were moved around
+        assertEquals("5:5", text(cache, 5));
+    }
+
+    @Test
+    public void entriesIgnoreEditsUnlessFollowing() {
+        LineNumberCache cache = new LineNumberCache(8, false);
+        text(cache, 1);
+        text(cache, 2);
+        cache.onLinesChanged(1, 0, 3);
+        cache.onLinesChanged(1);
+        assertEquals("1:1", text(cache, 1));
+        assertEquals("2:2", text(cache, 2));
+    }
+
+    @Test
+    public void followedEntriesMoveWithTheirLines() {
+        LineNumberCache cache = new LineNumberCache(8, true);
+        for(int i = 1; i <= 5; i++) {
+            text(cache, i);
+        }
+        //line 2 was edited and two lines were inserted after it
+        cache.onLinesChanged(2, 0, 2);
+        assertEquals("1:1", text(cache, 1));
+        assertEquals("2:6", text(cache, 2));
+        assertEquals("3:3", text(cache, 5));
+        assertEquals("5:5", text(cache, 7));
+        //lines 3 and 4 were joined with line 2
+        cache.onLinesChanged(2, 2, 0);
+        assertEquals("3:3", text(cache, 3));
+        assertEquals("5:5", text(cache, 5));
+        assertEquals(6, mController.mCalls);
+    }
+
+    @Test
+    public void untrackableChangesDropTheLinesAfter() {
+        LineNumberCache cache = new LineNumberCache(8, true);
+        for(int i = 1; i <= 4; i++) {
+            text(cache, i);
+        }
+        cache.onLinesChanged(3);
+        assertEquals("2:2", text(cache, 2));
+        assertEquals("3:5", text(cache, 3));
+        assertEquals("4:6", text(cache, 4));
+    }
+
+    @Test
+    public void clearForgetsEverything() {
+        LineNumberCache cache = new LineNumberCache(4, true);
+        text(cache, 1);
+        text(cache, 2);
+        cache.clear();
+        assertEquals("1:3", text(cache, 1));
+        assertEquals("2:4", text(cache, 2));
+    }
+
+    //Strings longer than the buffer used to be copied past its end
+    @Test
+    public void longTextIsCopied() {
+        LineNumberCache cache = new LineNumberCache(4, false);
+        StringBuilder suffix = new StringBuilder();
+        for(int i = 0; i < 3 * LineNumberBufferController.MIN_BUFFER_SIZE; i++) {
+            suffix.append('x');
+        }
+        mController.mSuffix = suffix.toString();
+        String text = text(cache, 1);
+        assertEquals("1:1" + suffix, text);
+        int slot = cache.get(mController, true, 1, mBuffer, MEASURER);
+        assertEquals(text.length(), cache.getWidth(slot), 0f);
+    }
+}
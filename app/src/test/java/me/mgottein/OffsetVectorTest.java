@@ -0,0 +1,122 @@
+package me.mgottein;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class OffsetVectorTest {
+
+    private static void assertValues(OffsetVector vector, int... values) {
+        assertEquals(values.length, vector.size());
+        for(int i = 0; i < values.length; i++) {
+            assertEquals(values[i], vector.get(i));
+        }
+    }
+
+    @Test
+    public void insertKeepsOrder() {
+        OffsetVector vector = new OffsetVector(1);
+        vector.add(10);
+        vector.add(30);
+        vector.insert(1, 20);
+        vector.insert(0, 5);
+        assertValues(vector, 5, 10, 20, 30);
+    }
+
+    @Test
+    public void lowerBound() {
+        OffsetVector vector = new OffsetVector(4);
+        vector.add(2);
+        vector.add(4);
+        vector.add(4);
+        vector.add(8);
+        assertEquals(0, vector.lowerBound(0));
+        assertEquals(1, vector.lowerBound(3));
+        assertEquals(1, vector.lowerBound(4));
+        assertEquals(3, vector.lowerBound(5));
+        assertEquals(4, vector.lowerBound(9));
+    }
+
+    @Test
+    public void shiftMovesValuesFromIndex() {
+        OffsetVector vector = new OffsetVector(4);
+        for(int i = 0; i < 5; i++) {
+            vector.add(i * 10);
+        }
+        vector.shift(2, 5);
+        assertValues(vector, 0, 10, 25, 35, 45);
+        //moving the gap in front of shifted values keeps them
+        vector.insert(1, 7);
+        assertValues(vector, 0, 7, 10, 25, 35, 45);
+        vector.shift(0, -1);
+        assertValues(vector, -1, 6, 9, 24, 34, 44);
+    }
+
+    @Test
+    public void deleteRange() {
+        OffsetVector vector = new OffsetVector(4);
+        for(int i = 0; i < 6; i++) {
+            vector.add(i);
+        }
+        vector.delete(1, 4);
+        assertValues(vector, 0, 4, 5);
+        vector.delete(0, 3);
+        assertValues(vector);
+    }
+
+    @Test
+    public void payloadsStayWithTheirValues() {
+        OffsetVector vector = new OffsetVector(2, true);
+        vector.insert(0, 10, 1);
+        vector.insert(1, 20, 2);
+        vector.insert(0, 5, 3);
+        vector.shift(1, 100);
+        vector.setPayload(2, 4);
+        assertValues(vector, 5, 110, 120);
+        assertEquals(3, vector.getPayload(0));
+        assertEquals(1, vector.getPayload(1));
+        assertEquals(4, vector.getPayload(2));
+    }
+
+    @Test
+    public void matchesList() {
+        Random random = new Random(1);
+        OffsetVector vector = new OffsetVector(1, true);
+        List<int[]> expected = new ArrayList<int[]>();
+        for(int step = 0; step < 5000; step++) {
+            int index = random.nextInt(expected.size() + 1);
+            switch(random.nextInt(3)) {
+                case 0: {
+                    int low = index > 0 ? expected.get(index - 1)[0] : -1000;
+                    int high = index < expected.size() ? expected.get(index)[0] : low + 100;
+                    int value = low + random.nextInt(high - low + 1);
+                    vector.insert(index, value, step);
+                    expected.add(index, new int[] {value, step});
+                    break;
+                }
+                case 1: {
+                    int end = Math.min(expected.size(), index + random.nextInt(3));
+                    vector.delete(index, end);
+                    expected.subList(index, end).clear();
+                    break;
+                }
+                default: {
+                    int delta = random.nextInt(20);
+                    vector.shift(index, delta);
+                    for(int i = index; i < expected.size(); i++) {
+                        expected.get(i)[0] += delta;
+                    }
+                }
+            }
+            assertEquals(expected.size(), vector.size());
+            for(int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i)[0], vector.get(i));
+                assertEquals(expected.get(i)[1], vector.getPayload(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package me.mgottein;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per frame line number work on documents of different sizes: formatting the visible line numbers, measuring the
+ * gutter, finding the visible lines and positioning each line number
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LineNumberGutterBenchmark {
+
+    private static final int LINE_HEIGHT = 20;
+    //a tall screen with a small font
+    private static final int VISIBLE_LINES = 100;
+    private static final int VIEW_HEIGHT = VISIBLE_LINES * LINE_HEIGHT;
+    //scroll distance per frame of a fast fling
+    private static final int FLING_DELTA = 37;
+
+    /**
+     * Lines of equal height whose left and right edges vary like centered text
+     */
+    static class FixedLineMetrics implements LineMetrics {
+        private final int mLineCount;
+
+        FixedLineMetrics(int lineCount) {
+            mLineCount = lineCount;
+        }
+
+        @Override
+        public int getLineCount() {
+            return mLineCount;
+        }
+
+        @Override
+        public int getLineTop(int line) {
+            return line * LINE_HEIGHT;
+        }
+
+        @Override
+        public int getLineBaseline(int line) {
+            return line * LINE_HEIGHT + LINE_HEIGHT - 4;
+        }
+
+        @Override
+        public float getLineLeft(int line) {
+            return (line % 40) * 7.5f;
+        }
+
+        @Override
+        public float getLineRight(int line) {
+            return 600 - (line % 40) * 7.5f;
+        }
+    }
+
+    /**
+     * Monospaced measurement, stands in for the line number paint
+     */
+    static class FixedWidthMeasurer implements TextMeasurer {
+        @Override
+        public float measureText(char[] text, int start, int count) {
+            return count * 12.5f;
+        }
+
+        @Override
+        public float measureText(String text) {
+            return text.length() * 12.5f;
+        }
+    }
+
+    /**
+     * Plain controller that allocates a String for every line number
+     */
+    static class StringController implements LineNumberController {
+        @Override
+        public String getLineNumberText(boolean layoutOnLeft, int line) {
+            return Integer.toString(line);
+        }
+
+        @Override
+        public boolean showLineNumber(int line) {
+            return true;
+        }
+    }
+
+    /**
+     * Buffer controller with "page:line" labels that skips odd lines
+     */
+    static class PageController implements LineNumberBufferController {
+        private static final int LINES_PER_PAGE = 50;
+
+        @Override
+        public String getLineNumberText(boolean layoutOnLeft, int line) {
+            return (line / LINES_PER_PAGE + 1) + ":" + line;
+        }
+
+        @Override
+        public int getLineNumberText(boolean layoutOnLeft, int line, char[] buffer) {
+            int length = LineNumberFormat.formatDecimal(line / LINES_PER_PAGE + 1, buffer, 0);
+            buffer[length++] = ':';
+            return length + LineNumberFormat.formatDecimal(line, buffer, length);
+        }
+
+        @Override
+        public boolean showLineNumber(int line) {
+            return line % 2 == 0;
+        }
+    }
+
+    @Param({"1000", "100000", "1000000"})
+    public int lines;
+
+    @Param({"default", "string", "page"})
+    public String controller;
+
+    private LineNumberController mController;
+    private LineMetrics mMetrics;
+    private LineNumberWidths mWidths;
+    private final char[] mBuffer = new char[LineNumberBufferController.MIN_BUFFER_SIZE];
+    private int mScrollY;
+    private int mFlingScrollY;
+    private VisibleLineCache mVisibleLines;
+    private LineNumberCache mLineNumberCache;
+
+    @Setup
+    public void setup() {
+        if("default".equals(controller)) {
+            mController = new DecimalLineNumberController();
+        } else if("string".equals(controller)) {
+            mController = new StringController();
+        } else {
+            mController = new PageController();
+        }
+        mMetrics = new FixedLineMetrics(lines);
+        mWidths = new LineNumberWidths(new FixedWidthMeasurer());
+        mVisibleLines = new VisibleLineCache();
+        mLineNumberCache = new LineNumberCache(4 * VISIBLE_LINES, false);
+    }
+
+    //scroll a little further every invocation, wrapping at the end of the document
+    private int nextScrollY() {
+        mScrollY += 7 * LINE_HEIGHT + 3;
+        if(mScrollY > (lines - VISIBLE_LINES) * LINE_HEIGHT) {
+            mScrollY = 0;
+        }
+        return mScrollY;
+    }
+
+    //fling down the document a few pixels every invocation, wrapping at the end
+    private int nextFlingScrollY() {
+        mFlingScrollY += FLING_DELTA;
+        if(mFlingScrollY > (lines - VISIBLE_LINES) * LINE_HEIGHT) {
+            mFlingScrollY = 0;
+        }
+        return mFlingScrollY;
+    }
+
+    @Benchmark
+    public int formatVisibleLineNumbers(Blackhole blackhole) {
+        int firstLine = nextScrollY() / LINE_HEIGHT;
+        int length = 0;
+        for(int line = firstLine + 1; line <= firstLine + VISIBLE_LINES; line++) {
+            if(mController.showLineNumber(line)) {
+                if(mController instanceof LineNumberBufferController) {
+                    length += ((LineNumberBufferController) mController).getLineNumberText(true, line, mBuffer);
+                    blackhole.consume(mBuffer);
+                } else {
+                    String text = mController.getLineNumberText(true, line);
+                    length += text.length();
+                    blackhole.consume(text);
+                }
+            }
+        }
+        return length;
+    }
+
+    @Benchmark
+    public int formatVisibleLineNumbersCached(Blackhole blackhole) {
+        //a fling only brings a few lines into view per frame, the rest are cached
+        int firstLine = nextFlingScrollY() / LINE_HEIGHT;
+        int length = 0;
+        for(int line = firstLine + 1; line <= firstLine + VISIBLE_LINES; line++) {
+            int slot = mLineNumberCache.get(mController, true, line, mBuffer, mWidths.getMeasurer());
+            if(mLineNumberCache.isShown(slot)) {
+                length += mLineNumberCache.getLength(slot);
+                blackhole.consume(mLineNumberCache.getText(slot));
+            }
+        }
+        return length;
+    }
+
+    @Benchmark
+    public int lineNumberWidth() {
+        return LineNumberGutter.getLineNumberWidth(mController, true, lines, mBuffer, mWidths);
+    }
+
+    @Benchmark
+    public int visibleRange() {
+        int scrollY = nextScrollY();
+        int firstLine = LineNumberGutter.getLineForVertical(mMetrics, scrollY);
+        int lastLine = LineNumberGutter.getLineForVertical(mMetrics, scrollY + VIEW_HEIGHT);
+        return lastLine - firstLine;
+    }
+
+    @Benchmark
+    public int flingBaselines() {
+        //what every frame did before the cache: two binary searches and a baseline per visible line
+        int scrollY = nextFlingScrollY();
+        int firstLine = LineNumberGutter.getLineForVertical(mMetrics, scrollY);
+        int lastLine = LineNumberGutter.getLineForVertical(mMetrics, scrollY + VIEW_HEIGHT);
+        int y = 0;
+        for(int line = firstLine; line <= lastLine; line++) {
+            y += mMetrics.getLineBaseline(line);
+        }
+        return y;
+    }
+
+    @Benchmark
+    public int flingBaselinesCached() {
+        int scrollY = nextFlingScrollY();
+        mVisibleLines.update(mMetrics, scrollY, scrollY + VIEW_HEIGHT);
+        int y = 0;
+        for(int line = mVisibleLines.getFirstLine(); line <= mVisibleLines.getLastLine(); line++) {
+            y += mVisibleLines.getBaseline(line);
+        }
+        return y;
+    }
+
+    @Benchmark
+    public int lineNumberXColumn() {
+        int firstLine = nextScrollY() / LINE_HEIGHT;
+        int x = 0;
+        for(int line = firstLine; line < firstLine + VISIBLE_LINES; line++) {
+            x += LineNumberGutter.getLineNumberX(mMetrics, line, false, false, 0, 560, 0, 0, 40);
+        }
+        return x;
+    }
+
+    @Benchmark
+    public int lineNumberXHugLine() {
+        int firstLine = nextScrollY() / LINE_HEIGHT;
+        int x = 0;
+        for(int line = firstLine; line < firstLine + VISIBLE_LINES; line++) {
+            x += LineNumberGutter.getLineNumberX(mMetrics, line, true, true, 0, 560, 0, 0, 40);
+        }
+        return x;
+    }
+}